@@ -0,0 +1,108 @@
+package legacyfighter.dietary;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Synthetic data for benchmarks. Rows are inserted with plain JDBC, the same way as the test scripts,
+ * using ids far above anything the hibernate sequence hands out.
+ */
+final class BenchmarkData {
+
+    private static final long FIRST_ID = 1_000_000;
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Admin at the root, companies below it, divisions inside and persons at the leaves.
+     * Every non-root group has ordersPerGroup orders. Returns the id of the root customer.
+     */
+    static long customerOrderGroupTree(JdbcTemplate jdbc, int depth, int width, int ordersPerGroup) {
+        List<Object[]> customers = new ArrayList<>();
+        List<Object[]> groups = new ArrayList<>();
+        List<Object[]> orders = new ArrayList<>();
+        long nextId = FIRST_ID;
+        long root = nextId++;
+        customers.add(new Object[]{root, "ADMIN " + root, "Admin"});
+        groups.add(new Object[]{root, "ROOT", root, null, "/" + root + "/"});
+
+        Map<Long, String> level = Map.of(root, "/" + root + "/");
+        for (int d = 1; d <= depth; d++) {
+            String type = d == depth ? "Person" : d == 1 ? "Company" : "Division";
+            Map<Long, String> nextLevel = new LinkedHashMap<>();
+            for (Map.Entry<Long, String> parent : level.entrySet()) {
+                for (int w = 0; w < width; w++) {
+                    long id = nextId++;
+                    String path = parent.getValue() + id + "/";
+                    customers.add(new Object[]{id, type + " " + id, type});
+                    groups.add(new Object[]{id, type, id, parent.getKey(), path});
+                    for (int o = 0; o < ordersPerGroup; o++) {
+                        orders.add(new Object[]{nextId++, "Paid", "Phone", id});
+                    }
+                    nextLevel.put(id, path);
+                }
+            }
+            level = nextLevel;
+        }
+        jdbc.batchUpdate("INSERT INTO CUSTOMER (ID, NAME, TYPE) VALUES (?, ?, ?)", customers);
+        jdbc.batchUpdate("INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (?, ?, ?, ?, ?)", groups);
+        jdbc.batchUpdate("INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID) VALUES (?, ?, ?, ?)", orders);
+        return root;
+    }
+
+    /**
+     * Alternating linear and square rules, not persisted.
+     */
+    static List<TaxRule> taxRules(int count) {
+        List<TaxRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rules.add(i % 2 == 0
+                    ? TaxRule.linearRule(1 + i % 3, i % 5, "L" + i, Year.of(2020))
+                    : TaxRule.squareRule(1, 0, i % 7, "S" + i, Year.of(2020)));
+        }
+        return rules;
+    }
+
+    /**
+     * Persists a config holding the given number of rules and a single order carrying all of them.
+     * Returns the id of the order.
+     */
+    static long orderWithTaxRules(ApplicationContext context, String countryCode, int ruleCount) {
+        TaxConfigRepository taxConfigRepository = context.getBean(TaxConfigRepository.class);
+        OrderRepository orderRepository = context.getBean(OrderRepository.class);
+        return context.getBean(TransactionTemplate.class).execute(status -> {
+            TaxConfig taxConfig = TaxConfig.from(countryCode, ruleCount);
+            taxRules(ruleCount).forEach(rule -> taxConfig.addTaxRule(rule, Instant.now()));
+            taxConfigRepository.save(taxConfig);
+
+            Order order = new Order();
+            order.setOrderState(Order.OrderState.Initial);
+            order.setOrderType(Order.OrderType.Phone);
+            order.setTaxRules(new ArrayList<>(taxConfig.getTaxRules()));
+            return orderRepository.save(order).getId();
+        });
+    }
+
+    /**
+     * One config with rulesPerCountry rules for each of the given number of countries.
+     */
+    static void taxConfigs(ApplicationContext context, int countries, int rulesPerCountry) {
+        TaxConfigRepository taxConfigRepository = context.getBean(TaxConfigRepository.class);
+        context.getBean(TransactionTemplate.class).executeWithoutResult(status -> {
+            for (int c = 0; c < countries; c++) {
+                TaxConfig taxConfig = TaxConfig.from("c" + c, rulesPerCountry);
+                taxRules(rulesPerCountry).forEach(rule -> taxConfig.addTaxRule(rule, Instant.now()));
+                taxConfigRepository.save(taxConfig);
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package legacyfighter.dietary;
+
+import legacyfighter.dietary.config.BulkWriter;
+import legacyfighter.dietary.newproducts.OldProduct;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports rows OldProducts, or rows OrderLines in orders of ten lines, through BulkWriter into a
+ * fresh in-memory H2 per iteration. A JDBC batch size of 1 shows the cost without batching; ids
+ * come from pooled sequences in both cases.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BulkImportBenchmark {
+
+    private static final int LINES_PER_ORDER = 10;
+
+    @Param({"1000000"})
+    int rows;
+
+    @Param({"1", "50"})
+    int jdbcBatchSize;
+
+    private ConfigurableApplicationContext context;
+    private BulkWriter bulkWriter;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        context = BenchmarkContext.start("bulk-import-" + System.nanoTime());
+        bulkWriter = context.getBean(BulkWriter.class);
+    }
+
+    // the schema is dropped on close, which frees the imported rows of the iteration
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long importOldProducts() {
+        return bulkWriter.persistAll(oldProducts(rows), jdbcBatchSize);
+    }
+
+    @Benchmark
+    public long importOrderLines() {
+        return bulkWriter.persistAll(ordersWithLines(rows), jdbcBatchSize);
+    }
+
+    static Iterator<OldProduct> oldProducts(int count) {
+        return new Iterator<>() {
+            int next;
+
+            @Override
+            public boolean hasNext() {
+                return next < count;
+            }
+
+            @Override
+            public OldProduct next() {
+                int i = next++;
+                return new OldProduct(BigDecimal.valueOf(1 + i % 100), "product " + i, "long description of product " + i, i % 50);
+            }
+        };
+    }
+
+    /**
+     * Every order is followed by its lines, so a line never refers to an order not yet persisted.
+     */
+    static Iterator<Object> ordersWithLines(int lineCount) {
+        return new Iterator<>() {
+            int lines;
+            Order order;
+
+            @Override
+            public boolean hasNext() {
+                return lines < lineCount;
+            }
+
+            @Override
+            public Object next() {
+                if (lines % LINES_PER_ORDER == 0 && order == null) {
+                    order = new Order();
+                    order.setOrderState(Order.OrderState.Initial);
+                    order.setOrderType(Order.OrderType.Regular_Batch);
+                    return order;
+                }
+                OrderLine line = new OrderLine();
+                line.setOrder(order);
+                line.setPrice(BigDecimal.valueOf(1 + lines % 100));
+                line.setQuantity(1 + lines % 5);
+                if (++lines % LINES_PER_ORDER == 0) {
+                    order = null;
+                }
+                return line;
+            }
+        };
+    }
+}
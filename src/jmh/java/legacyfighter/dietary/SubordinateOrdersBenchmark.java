@@ -0,0 +1,54 @@
+package legacyfighter.dietary;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Subtree order queries over deep and wide CustomerOrderGroup trees, against in-memory H2.
+ * The shape is depth x width; every non-root group carries two orders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubordinateOrdersBenchmark {
+
+    @Param({"8x2", "3x12", "1x1000"})
+    String shape;
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private long adminId;
+
+    @Setup
+    public void setup() {
+        String[] dimensions = shape.split("x");
+        context = BenchmarkContext.start("subordinate-orders");
+        orderService = context.getBean(OrderService.class);
+        adminId = BenchmarkData.customerOrderGroupTree(context.getBean(JdbcTemplate.class),
+                Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<OrderDto> getOrdersIncludingSubordinates() {
+        return orderService.getOrdersIncludingSubordinates(adminId);
+    }
+
+    @Benchmark
+    public int streamOrdersForAdmin() {
+        int[] count = {0};
+        orderService.streamOrdersForAdmin(adminId, order -> count[0]++);
+        return count[0];
+    }
+}
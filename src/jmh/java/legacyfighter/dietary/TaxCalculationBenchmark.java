@@ -0,0 +1,43 @@
+package legacyfighter.dietary;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OrderService.calculateTaxForOrder against in-memory H2, for an order carrying N tax rules.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaxCalculationBenchmark {
+
+    @Param({"1", "10", "50"})
+    int rules;
+
+    private ConfigurableApplicationContext context;
+    private OrderService orderService;
+    private long orderId;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start("tax-calculation");
+        orderService = context.getBean(OrderService.class);
+        orderId = BenchmarkData.orderWithTaxRules(context, "bench", rules);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BigDecimal calculateTaxForOrder() {
+        return orderService.calculateTaxForOrder(orderId);
+    }
+}
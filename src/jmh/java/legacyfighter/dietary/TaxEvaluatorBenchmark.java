@@ -0,0 +1,38 @@
+package legacyfighter.dietary;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pure domain: evaluation of an already compiled rule chain, no database involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaxEvaluatorBenchmark {
+
+    @Param({"1", "10", "50"})
+    int rules;
+
+    private TaxEvaluator evaluator;
+
+    @Setup
+    public void setup() {
+        evaluator = TaxEvaluator.compile(BenchmarkData.taxRules(rules));
+    }
+
+    @Benchmark
+    public BigDecimal evaluateCompiledChain() {
+        return evaluator.evaluate(BigDecimal.ZERO);
+    }
+
+    @Benchmark
+    public TaxEvaluator compileChain() {
+        return TaxEvaluator.compile(BenchmarkData.taxRules(rules));
+    }
+}
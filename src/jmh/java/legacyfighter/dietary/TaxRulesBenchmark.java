@@ -0,0 +1,48 @@
+package legacyfighter.dietary;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TaxRuleService reads against in-memory H2 with configs for many countries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TaxRulesBenchmark {
+
+    @Param({"10", "200"})
+    int countries;
+
+    private ConfigurableApplicationContext context;
+    private TaxRuleService taxRuleService;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start("tax-rules");
+        taxRuleService = context.getBean(TaxRuleService.class);
+        BenchmarkData.taxConfigs(context, countries, 5);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Map<String, List<TaxRule>> findAllRules() {
+        return taxRuleService.findAllRules();
+    }
+
+    @Benchmark
+    public List<TaxRule> findRules() {
+        return taxRuleService.findRules("c0");
+    }
+}
@@ -0,0 +1,63 @@
+package legacyfighter.dietary.newproducts;
+
+import legacyfighter.dietary.BenchmarkContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OldProductService.findAllDescriptions over large catalogs, against in-memory H2.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OldProductDescriptionsBenchmark {
+
+    @Param({"1000", "50000"})
+    int catalogSize;
+
+    private ConfigurableApplicationContext context;
+    private OldProductService oldProductService;
+
+    @Setup
+    public void setup() {
+        context = BenchmarkContext.start("old-products");
+        oldProductService = context.getBean(OldProductService.class);
+        catalog(context.getBean(OldProductRepository.class), catalogSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<String> findAllDescriptions() {
+        return oldProductService.findAllDescriptions();
+    }
+
+    @Benchmark
+    public void streamAllDescriptions(Blackhole blackhole) {
+        oldProductService.streamAllDescriptions(blackhole::consume);
+    }
+
+    static void catalog(OldProductRepository repository, int size) {
+        List<OldProduct> chunk = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            chunk.add(new OldProduct(BigDecimal.valueOf(1 + i % 100), "product " + i, "long description of product " + i, i % 50));
+            if (chunk.size() == 1000) {
+                repository.saveAll(chunk);
+                chunk.clear();
+            }
+        }
+        repository.saveAll(chunk);
+    }
+}
@@ -0,0 +1,125 @@
+package legacyfighter.dietary;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Computes tax for many orders at once. Order ids, stored totals and rule ids are read in batches as
+ * plain values, so no orders enter the caller's persistence context and nothing is written. Totals not
+ * stored yet are summed up with one aggregate query per batch. Orders sharing the same rule chain are
+ * grouped, chains are evaluated in parallel on a dedicated, bounded pool and every distinct order total
+ * is evaluated once per chain.
+ */
+@Component
+class BatchTaxCalculator {
+
+    static final int FETCH_BATCH_SIZE = 1000;
+
+    private final OrderRepository orderRepository;
+    private final TaxRuleRepository taxRuleRepository;
+    private final TaxEvaluatorCache taxEvaluatorCache;
+    private final ForkJoinPool pool;
+
+    BatchTaxCalculator(OrderRepository orderRepository,
+                       TaxRuleRepository taxRuleRepository,
+                       TaxEvaluatorCache taxEvaluatorCache,
+                       @Value("${tax.batch.parallelism:4}") int parallelism) {
+        this.orderRepository = orderRepository;
+        this.taxRuleRepository = taxRuleRepository;
+        this.taxEvaluatorCache = taxEvaluatorCache;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    Map<Long, BigDecimal> calculate(Collection<Long> orderIds) {
+        return calculateOrderTaxes(orderIds).stream().collect(Collectors.toMap(OrderTax::getOrderId, OrderTax::getTax));
+    }
+
+    List<OrderTax> calculateOrderTaxes(Collection<Long> orderIds) {
+        Map<List<Long>, TaxEvaluator> evaluators = new HashMap<>();
+        Map<List<Long>, Map<Long, BigDecimal>> totalsByChain = new HashMap<>();
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(orderIds));
+        for (int from = 0; from < ids.size(); from += FETCH_BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + FETCH_BATCH_SIZE, ids.size()));
+            Map<Long, List<Long>> chains = new HashMap<>();
+            Map<Long, BigDecimal> totals = new HashMap<>();
+            for (Object[] row : orderRepository.findTotalsAndTaxRuleIdsByIdIn(batch)) {
+                Long orderId = (Long) row[0];
+                List<Long> chain = chains.computeIfAbsent(orderId, key -> new ArrayList<>());
+                if (row[1] != null) {
+                    totals.put(orderId, (BigDecimal) row[1]);
+                }
+                if (row[2] != null) {
+                    chain.add((Long) row[2]);
+                }
+            }
+            sumMissingTotals(chains.keySet(), totals);
+            compileMissingEvaluators(chains.values(), evaluators);
+            chains.forEach((orderId, chain) ->
+                    totalsByChain.computeIfAbsent(chain, key -> new HashMap<>()).put(orderId, totals.get(orderId)));
+        }
+        return evaluate(evaluators, totalsByChain);
+    }
+
+    private void sumMissingTotals(Set<Long> orderIds, Map<Long, BigDecimal> totals) {
+        Set<Long> missing = new HashSet<>(orderIds);
+        missing.removeAll(totals.keySet());
+        if (missing.isEmpty()) {
+            return;
+        }
+        for (Object[] row : orderRepository.sumLineValuesOf(missing)) {
+            totals.put((Long) row[0], (BigDecimal) row[1]);
+        }
+        missing.forEach(orderId -> totals.putIfAbsent(orderId, BigDecimal.ZERO));
+    }
+
+    private void compileMissingEvaluators(Collection<List<Long>> chains, Map<List<Long>, TaxEvaluator> evaluators) {
+        Set<Long> ruleIds = new HashSet<>();
+        for (List<Long> chain : chains) {
+            if (!evaluators.containsKey(chain)) {
+                ruleIds.addAll(chain);
+            }
+        }
+        Map<Long, TaxRule> rules = new HashMap<>();
+        if (!ruleIds.isEmpty()) {
+            taxRuleRepository.findAllById(ruleIds).forEach(rule -> rules.put(rule.getId(), rule));
+        }
+        for (List<Long> chain : chains) {
+            evaluators.computeIfAbsent(chain, key -> taxEvaluatorCache.forRules(
+                    key.stream().map(rules::get).collect(Collectors.toList())));
+        }
+    }
+
+    private List<OrderTax> evaluate(Map<List<Long>, TaxEvaluator> evaluators, Map<List<Long>, Map<Long, BigDecimal>> totalsByChain) {
+        try {
+            return pool.submit(() -> totalsByChain.entrySet()
+                    .parallelStream()
+                    .flatMap(chain -> {
+                        TaxEvaluator evaluator = evaluators.get(chain.getKey());
+                        long ruleSetVersion = OrderTax.ruleSetVersionOf(chain.getKey());
+                        Map<BigDecimal, BigDecimal> taxByTotal = new HashMap<>();
+                        return chain.getValue().entrySet().stream()
+                                .map(order -> new OrderTax(order.getKey(), order.getValue(),
+                                        taxByTotal.computeIfAbsent(order.getValue(), evaluator::evaluate), ruleSetVersion));
+                    })
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("tax calculation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("tax calculation failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -13,6 +13,11 @@ public class CustomerDto {
         this.id = customer.getId();
     }
 
+    CustomerDto(Long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
     public String getName() {
         return name;
     }
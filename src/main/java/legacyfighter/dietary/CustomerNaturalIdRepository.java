@@ -0,0 +1,9 @@
+package legacyfighter.dietary;
+
+public interface CustomerNaturalIdRepository {
+
+    /**
+     * Looks the customer up by its natural id, served from the second-level cache when possible.
+     */
+    Customer findByName(String name);
+}
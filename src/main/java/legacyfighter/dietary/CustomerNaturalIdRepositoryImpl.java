@@ -0,0 +1,20 @@
+package legacyfighter.dietary;
+
+import org.hibernate.Session;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+class CustomerNaturalIdRepositoryImpl implements CustomerNaturalIdRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Customer findByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(Customer.class).load(name);
+    }
+}
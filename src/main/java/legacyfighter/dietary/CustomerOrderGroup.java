@@ -1,17 +1,29 @@
 package legacyfighter.dietary;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.Session;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.classic.Lifecycle;
+
 import javax.persistence.*;
+import java.io.Serializable;
 import java.util.Objects;
 import java.util.Set;
 
 @Entity
-public class CustomerOrderGroup {
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "customer-order-group")
+@Table(indexes = @Index(columnList = "path"))
+public class CustomerOrderGroup implements Lifecycle {
+
+    static final String PATH_SEPARATOR = "/";
 
     public CustomerOrderGroup() {
 
     }
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_order_group_seq")
+    @SequenceGenerator(name = "customer_order_group_seq", allocationSize = 50)
     private Long id;
 
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "customerOrderGroup")
@@ -28,14 +40,71 @@ public class CustomerOrderGroup {
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "parent")
     private Set<CustomerOrderGroup> childs;
 
+    /**
+     * Materialized path of group ids from the root down to this group, e.g. "/3/1/4/".
+     * Every group in the subtree of this one has a path starting with it.
+     */
+    @Column(nullable = false)
+    private String path;
+
     String getCustomerName() {
         return customer.getName();
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public CustomerOrderGroup getParent() {
         return parent;
     }
 
+    public String getPath() {
+        return path;
+    }
+
+    void moveUnder(CustomerOrderGroup newParent) {
+        if (id == null) {
+            throw new IllegalStateException("group must be persisted before it is placed in hierarchy");
+        }
+        if (newParent != null && newParent.isInSubtreeOf(this)) {
+            throw new IllegalStateException("cannot move group under its own subordinate");
+        }
+        this.parent = newParent;
+        this.path = (newParent == null ? PATH_SEPARATOR : newParent.path) + id + PATH_SEPARATOR;
+    }
+
+    /**
+     * Hibernate calls this once the id has been generated and before the row is inserted,
+     * so a group persisted through JPA gets its path without a separate placement step.
+     */
+    @Override
+    public boolean onSave(Session session) {
+        if (path == null) {
+            path = (parent == null ? PATH_SEPARATOR : parent.path) + id + PATH_SEPARATOR;
+        }
+        return NO_VETO;
+    }
+
+    @Override
+    public boolean onUpdate(Session session) {
+        return NO_VETO;
+    }
+
+    @Override
+    public boolean onDelete(Session session) {
+        return NO_VETO;
+    }
+
+    @Override
+    public void onLoad(Session session, Serializable id) {
+
+    }
+
+    boolean isInSubtreeOf(CustomerOrderGroup ancestor) {
+        return path != null && ancestor.path != null && path.startsWith(ancestor.path);
+    }
+
     public Set<Order> getOrders() {
         return orders;
     }
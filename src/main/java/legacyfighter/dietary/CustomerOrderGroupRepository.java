@@ -1,9 +1,24 @@
 package legacyfighter.dietary;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface CustomerOrderGroupRepository extends JpaRepository<CustomerOrderGroup, Long> {
-}
 
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update CustomerOrderGroup g set g.path = concat(:newPath, substring(g.path, length(:oldPath) + 1, length(g.path) - length(:oldPath))) " +
+            "where g.path like concat(:oldPath, '_%')")
+    int rebaseSubordinatePaths(@Param("oldPath") String oldPath, @Param("newPath") String newPath);
 
+    // pairs of customer id and the id of the customer's group
+    @Query("select g.customer.id, g.id from CustomerOrderGroup g where g.customer.id in :customerIds")
+    List<Object[]> findGroupIdsOfCustomers(@Param("customerIds") Collection<Long> customerIds);
 
+    @Query(OrderRepository.ORDER_DTO + "where g.id = :groupId order by o.id")
+    List<OrderDto> findOrdersOf(@Param("groupId") Long groupId);
+}
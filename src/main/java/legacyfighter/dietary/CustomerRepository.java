@@ -2,7 +2,5 @@ package legacyfighter.dietary;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
-public interface CustomerRepository extends JpaRepository<Customer, Long> {
-
-    Customer findByName(String name);
+public interface CustomerRepository extends JpaRepository<Customer, Long>, CustomerNaturalIdRepository {
 }
@@ -1,12 +1,13 @@
 package legacyfighter.dietary;
 
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.persistence.EntityManagerFactory;
 import javax.transaction.Transactional;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 @Service
 public class CustomerService {
@@ -14,6 +15,12 @@ public class CustomerService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private CustomerOrderGroupRepository customerOrderGroupRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     public CustomerDto getCustomerBy(Long id) {
         Customer byId = customerRepository.findById(id)
                 .orElseThrow(IllegalArgumentException::new);
@@ -31,15 +38,31 @@ public class CustomerService {
         if (group == null) {
             throw new IllegalStateException("group cannot be null");
         }
-        Set<Order> orders = group.getOrders();
-
-        return
-                orders
-                        .stream()
-                        .map(OrderDto::new)
-                        .collect(Collectors.toList());
+        return customerOrderGroupRepository.findOrdersOf(group.getId());
+    }
 
+    @Transactional
+    public void moveCustomerOrderGroup(Long groupId, Long newParentId) {
+        CustomerOrderGroup group = customerOrderGroupRepository.findById(groupId)
+                .orElseThrow(IllegalArgumentException::new);
+        CustomerOrderGroup newParent = newParentId == null ? null : customerOrderGroupRepository.findById(newParentId)
+                .orElseThrow(IllegalArgumentException::new);
+        String oldPath = group.getPath();
+        group.moveUnder(newParent);
+        if (oldPath != null) {
+            customerOrderGroupRepository.rebaseSubordinatePaths(oldPath, group.getPath());
+        }
+    }
 
+    /**
+     * Drops customers and groups from the second-level cache. Changes made through JPA evict them on their own,
+     * this is for changes made to the tables behind its back, e.g. by SQL scripts.
+     */
+    public void evictCustomerCaches() {
+        Cache cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        cache.evictEntityData(Customer.class);
+        cache.evictNaturalIdData(Customer.class);
+        cache.evictEntityData(CustomerOrderGroup.class);
     }
 
 }
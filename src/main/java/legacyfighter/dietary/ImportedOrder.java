@@ -0,0 +1,36 @@
+package legacyfighter.dietary;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One order as read from an import file, not validated yet. Records are numbered from 1 in file order.
+ */
+class ImportedOrder {
+
+    final long record;
+    final String externalId;
+    Long customerId;
+    String orderType;
+    String orderState;
+    final List<Line> lines = new ArrayList<>();
+    String malformed;
+
+    ImportedOrder(long record, String externalId) {
+        this.record = record;
+        this.externalId = externalId;
+    }
+
+    static class Line {
+        final Long productId;
+        final Integer quantity;
+        final BigDecimal price;
+
+        Line(Long productId, Integer quantity, BigDecimal price) {
+            this.productId = productId;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+}
@@ -1,19 +1,82 @@
 package legacyfighter.dietary;
 
 import javax.persistence.*;
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Entity
 @Table(name = "order_table")
+@EntityListeners(OrderTaxListener.class)
 public class Order {
 
+    /**
+     * Read-only view of the items, change them through addItem and removeItem so that the total is kept with them.
+     */
     public List<OrderLine> getItems() {
-        return items;
+        return items == null ? List.of() : Collections.unmodifiableList(items);
     }
 
     public void setItems(List<OrderLine> items) {
-        this.items = items;
+        for (OrderLine item : List.copyOf(getItems())) {
+            removeItem(item);
+        }
+        if (items != null) {
+            items.forEach(this::addItem);
+        }
+        storeTotal();
+    }
+
+    public void addItem(OrderLine item) {
+        if (items == null) {
+            items = new ArrayList<>();
+        }
+        items.add(item);
+        item.setOrder(this);
+        storeTotal();
+    }
+
+    /**
+     * The removed item is deleted together with the order's changes.
+     */
+    public void removeItem(OrderLine item) {
+        if (items != null && items.remove(item)) {
+            item.setOrder(null);
+            storeTotal();
+        }
+    }
+
+    /**
+     * Sum of price * quantity over the items. The total is stored only when items change through the order,
+     * reading it never changes the order, an order without a stored total is summed up on every call.
+     */
+    public BigDecimal getTotal() {
+        return total != null ? total : totalOf(items);
+    }
+
+    boolean isTotalKnown() {
+        return total != null;
+    }
+
+    // a line changed or deleted on its own may not be in items yet, the total is summed up until items change again
+    void itemsChanged() {
+        total = null;
+    }
+
+    private void storeTotal() {
+        total = totalOf(items);
+    }
+
+    static BigDecimal totalOf(List<OrderLine> items) {
+        BigDecimal total = BigDecimal.ZERO;
+        if (items != null) {
+            for (OrderLine item : items) {
+                total = total.add(item.getValue());
+            }
+        }
+        return total;
     }
 
     enum OrderState {
@@ -25,7 +88,8 @@ public class Order {
     }
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_seq")
+    @SequenceGenerator(name = "order_seq", allocationSize = 50)
     private Long id;
 
     @Enumerated(EnumType.STRING)
@@ -37,14 +101,25 @@ public class Order {
     @ManyToOne(cascade = CascadeType.ALL)
     private CustomerOrderGroup customerOrderGroup;
 
-    @OneToMany(cascade = CascadeType.ALL, mappedBy = "order")
+    @OneToMany(cascade = CascadeType.ALL, mappedBy = "order", orphanRemoval = true)
     private List<OrderLine> items;
 
     @ManyToMany
+    @JoinTable(name = "order_table_tax_rules",
+            joinColumns = @JoinColumn(name = "order_id"),
+            inverseJoinColumns = @JoinColumn(name = "tax_rules_id"))
+    // rules are applied one after another, so their order is part of the chain
+    @OrderColumn(name = "rule_index")
     private List<TaxRule> taxRules;
 
     private Instant confirmationTimestamp;
 
+    private BigDecimal total;
+
+    // the stored total is derived from the lines, concurrent changes of the order must not overwrite each other's
+    @Version
+    private Long version;
+
     public Order() {
     }
 
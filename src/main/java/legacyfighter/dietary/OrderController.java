@@ -0,0 +1,102 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+@RestController
+public class OrderController {
+
+    private static final int FLUSH_EVERY = 100;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderImportService orderImportService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @GetMapping("/orders/company/{customerId}")
+    public List<OrderDto> companyOrders(@PathVariable Long customerId,
+                                        @RequestParam(required = false) Long after,
+                                        @RequestParam(defaultValue = "100") int size) {
+        orderService.checkCompanyVisibleToLoggedCustomer(customerId);
+        return orderService.getOrdersForCompany(customerId, after, size);
+    }
+
+    @GetMapping("/orders/admin/{customerId}")
+    public List<OrderDto> adminOrders(@PathVariable Long customerId,
+                                      @RequestParam(required = false) Long after,
+                                      @RequestParam(defaultValue = "100") int size) {
+        orderService.checkAdminVisibleToLoggedCustomer(customerId);
+        return orderService.getOrdersForAdmin(customerId, after, size);
+    }
+
+    @GetMapping("/orders/company/{customerId}/stream")
+    public ResponseEntity<StreamingResponseBody> streamCompanyOrders(@PathVariable Long customerId) {
+        orderService.checkCompanyVisibleToLoggedCustomer(customerId);
+        return streamed(customerId, orderService::streamOrdersForCompany);
+    }
+
+    @GetMapping("/orders/admin/{customerId}/stream")
+    public ResponseEntity<StreamingResponseBody> streamAdminOrders(@PathVariable Long customerId) {
+        orderService.checkAdminVisibleToLoggedCustomer(customerId);
+        return streamed(customerId, orderService::streamOrdersForAdmin);
+    }
+
+    @PostMapping(value = "/orders/import/{importId}", consumes = {"text/csv", "application/x-ndjson"})
+    public OrderImportReport importOrders(@PathVariable String importId,
+                                          @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                          HttpServletRequest request) throws IOException {
+        orderService.checkLoggedCustomerIsAdmin();
+        OrderImportFormat format = contentType.startsWith("text/csv") ? OrderImportFormat.CSV : OrderImportFormat.NDJSON;
+        return orderImportService.importOrders(importId, new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8), format);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamed(Long customerId, BiConsumer<Long, Consumer<OrderDto>> source) {
+        ObjectWriter writer = objectMapper.writerFor(OrderDto.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(outputStream)) {
+                json.writeStartArray();
+                int[] written = {0};
+                source.accept(customerId, order -> {
+                    try {
+                        writer.writeValue(json, order);
+                        if (++written[0] % FLUSH_EVERY == 0) {
+                            json.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
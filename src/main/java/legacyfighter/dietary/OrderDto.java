@@ -19,6 +19,19 @@ public class OrderDto {
         this.orderId = order.getId();
     }
 
+    // used by constructor expressions of OrderRepository and CustomerOrderGroupRepository
+    public OrderDto(Long orderId, Instant confirmationTimestamp, Order.OrderType orderType, Order.OrderState orderState,
+                    Long customerId, String customerName) {
+        this.orderId = orderId;
+        this.confirmationTimestamp = confirmationTimestamp;
+        this.orderType = orderType;
+        this.orderState = orderState;
+        this.customerDto = new CustomerDto(customerId, customerName);
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
 
     public Instant getConfirmationTimestamp() {
         return confirmationTimestamp;
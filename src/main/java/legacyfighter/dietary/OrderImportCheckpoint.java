@@ -0,0 +1,54 @@
+package legacyfighter.dietary;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+
+/**
+ * Progress of an order import, written in the same transaction as every chunk of orders,
+ * so that an interrupted import can be resumed after the last committed record.
+ */
+@Entity
+public class OrderImportCheckpoint {
+
+    @Id
+    private String importId;
+
+    private long committedRecords;
+
+    private long importedOrders;
+
+    private long rejectedOrders;
+
+    @Version
+    private Long version;
+
+    public OrderImportCheckpoint() {
+    }
+
+    OrderImportCheckpoint(String importId) {
+        this.importId = importId;
+    }
+
+    void chunkCommitted(int records, int imported, int rejected) {
+        committedRecords += records;
+        importedOrders += imported;
+        rejectedOrders += rejected;
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    public long getCommittedRecords() {
+        return committedRecords;
+    }
+
+    public long getImportedOrders() {
+        return importedOrders;
+    }
+
+    public long getRejectedOrders() {
+        return rejectedOrders;
+    }
+}
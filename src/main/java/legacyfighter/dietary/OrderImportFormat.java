@@ -0,0 +1,13 @@
+package legacyfighter.dietary;
+
+/**
+ * NDJSON: one order per line, e.g.
+ * {"externalId":"A-1","customerId":7,"orderType":"Phone","orderState":"Initial","lines":[{"productId":1,"quantity":2,"price":"9.99"}]}
+ * <p>
+ * CSV: a header followed by one row per order line, consecutive rows with the same externalId form one order:
+ * externalId,customerId,orderType,orderState,productId,quantity,price
+ * Values are plain, quoting is not supported.
+ */
+public enum OrderImportFormat {
+    CSV, NDJSON
+}
@@ -0,0 +1,168 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads orders one at a time from a CSV or NDJSON source, see {@link OrderImportFormat}.
+ * Records which cannot be parsed are still returned, marked as malformed, so that they can be reported.
+ */
+class OrderImportReader implements Iterator<ImportedOrder> {
+
+    static final String CSV_HEADER = "externalId,customerId,orderType,orderState,productId,quantity,price";
+
+    private final BufferedReader input;
+    private final OrderImportFormat format;
+    private final ObjectMapper objectMapper;
+    private long records;
+    private String[] pendingRow;
+    private ImportedOrder next;
+
+    OrderImportReader(BufferedReader input, OrderImportFormat format, ObjectMapper objectMapper) {
+        this.input = input;
+        this.format = format;
+        this.objectMapper = objectMapper;
+        if (format == OrderImportFormat.CSV) {
+            String header = readLine();
+            if (header == null || !CSV_HEADER.equals(header.trim())) {
+                throw new IllegalArgumentException("CSV import must start with header " + CSV_HEADER);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = format == OrderImportFormat.CSV ? readCsvOrder() : readJsonOrder();
+        }
+        return next != null;
+    }
+
+    @Override
+    public ImportedOrder next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        ImportedOrder order = next;
+        next = null;
+        return order;
+    }
+
+    private ImportedOrder readJsonOrder() {
+        String line = nextNonBlankLine();
+        if (line == null) {
+            return null;
+        }
+        JsonNode json;
+        try {
+            json = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            return malformed(new ImportedOrder(++records, null), "not a JSON object");
+        }
+        ImportedOrder order = new ImportedOrder(++records, json.path("externalId").asText(null));
+        try {
+            order.customerId = longOf(json.path("customerId").asText(null));
+            order.orderType = json.path("orderType").asText(null);
+            order.orderState = json.path("orderState").asText(null);
+            for (JsonNode lineJson : json.path("lines")) {
+                order.lines.add(new ImportedOrder.Line(
+                        longOf(lineJson.path("productId").asText(null)),
+                        intOf(lineJson.path("quantity").asText(null)),
+                        decimalOf(lineJson.path("price").asText(null))));
+            }
+        } catch (NumberFormatException e) {
+            return malformed(order, "not a number: " + e.getMessage());
+        }
+        return order;
+    }
+
+    /**
+     * Reads all consecutive rows with the same externalId, even after one of them turned out malformed,
+     * so that the remaining rows of a rejected order do not form an order of their own.
+     */
+    private ImportedOrder readCsvOrder() {
+        String[] row = pendingRow != null ? pendingRow : nextCsvRow();
+        pendingRow = null;
+        if (row == null) {
+            return null;
+        }
+        ImportedOrder order = new ImportedOrder(++records, row[0]);
+        String problem = null;
+        do {
+            if (problem == null) {
+                problem = addCsvRow(order, row);
+            }
+            row = nextCsvRow();
+        } while (row != null && row[0].equals(order.externalId));
+        pendingRow = row;
+        return problem == null ? order : malformed(order, problem);
+    }
+
+    // the first row of an order also carries its customer, type and state; returns why the row is malformed, or null
+    private String addCsvRow(ImportedOrder order, String[] row) {
+        if (row.length != 7) {
+            return "expected 7 columns but got " + row.length;
+        }
+        try {
+            if (order.lines.isEmpty()) {
+                order.customerId = longOf(row[1]);
+                order.orderType = row[2];
+                order.orderState = row[3];
+            }
+            order.lines.add(lineOf(row));
+        } catch (NumberFormatException e) {
+            return "not a number: " + e.getMessage();
+        }
+        return null;
+    }
+
+    private ImportedOrder.Line lineOf(String[] row) {
+        return new ImportedOrder.Line(longOf(row[4]), intOf(row[5]), decimalOf(row[6]));
+    }
+
+    private ImportedOrder malformed(ImportedOrder order, String reason) {
+        order.malformed = reason;
+        return order;
+    }
+
+    private String[] nextCsvRow() {
+        String line = nextNonBlankLine();
+        return line == null ? null : line.split(",", -1);
+    }
+
+    private String nextNonBlankLine() {
+        String line;
+        do {
+            line = readLine();
+        } while (line != null && line.isBlank());
+        return line;
+    }
+
+    private String readLine() {
+        try {
+            return input.readLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Long longOf(String value) {
+        return value == null || value.isBlank() ? null : Long.valueOf(value.trim());
+    }
+
+    private static Integer intOf(String value) {
+        return value == null || value.isBlank() ? null : Integer.valueOf(value.trim());
+    }
+
+    private static BigDecimal decimalOf(String value) {
+        return value == null || value.isBlank() ? null : new BigDecimal(value.trim());
+    }
+}
@@ -0,0 +1,82 @@
+package legacyfighter.dietary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class OrderImportReport {
+
+    static final int MAX_REPORTED_REJECTIONS = 1000;
+
+    private final String importId;
+    private final long skippedRecords;
+    private long importedOrders;
+    private long rejectedOrders;
+    private final List<Rejection> rejections = new ArrayList<>();
+
+    OrderImportReport(String importId, long skippedRecords) {
+        this.importId = importId;
+        this.skippedRecords = skippedRecords;
+    }
+
+    void imported(int orders) {
+        importedOrders += orders;
+    }
+
+    void rejected(ImportedOrder order, String reason) {
+        rejectedOrders++;
+        if (rejections.size() < MAX_REPORTED_REJECTIONS) {
+            rejections.add(new Rejection(order.record, order.externalId, reason));
+        }
+    }
+
+    public String getImportId() {
+        return importId;
+    }
+
+    /**
+     * Records committed by an earlier, interrupted run of the same import.
+     */
+    public long getSkippedRecords() {
+        return skippedRecords;
+    }
+
+    public long getImportedOrders() {
+        return importedOrders;
+    }
+
+    public long getRejectedOrders() {
+        return rejectedOrders;
+    }
+
+    /**
+     * The first {@value #MAX_REPORTED_REJECTIONS} rejections of this run.
+     */
+    public List<Rejection> getRejections() {
+        return Collections.unmodifiableList(rejections);
+    }
+
+    public static class Rejection {
+        private final long record;
+        private final String externalId;
+        private final String reason;
+
+        Rejection(long record, String externalId, String reason) {
+            this.record = record;
+            this.externalId = externalId;
+            this.reason = reason;
+        }
+
+        public long getRecord() {
+            return record;
+        }
+
+        public String getExternalId() {
+            return externalId;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports orders from CSV or NDJSON files. A reader thread parses the file into chunks and hands them over
+ * through a bounded queue, so parsing never runs more than a few chunks ahead of the database. Customers and
+ * products of a chunk are validated with one query each and remembered for the following chunks. Every chunk
+ * is written in its own transaction together with the import checkpoint, so a failed import can be run again
+ * with the same id and continues after the last committed chunk. Chunk transactions never join a transaction of
+ * the caller, so they stay committed when the caller rolls back and the caller's persistence context is not cleared.
+ */
+@Service
+public class OrderImportService {
+
+    private final CustomerOrderGroupRepository customerOrderGroupRepository;
+    private final ProductRepository productRepository;
+    private final OrderImportCheckpointRepository checkpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int queueCapacity;
+    private final ExecutorService readers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "order-import-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    OrderImportService(CustomerOrderGroupRepository customerOrderGroupRepository,
+                       ProductRepository productRepository,
+                       OrderImportCheckpointRepository checkpointRepository,
+                       PlatformTransactionManager transactionManager,
+                       ObjectMapper objectMapper,
+                       @Value("${orders.import.chunk-size:500}") int chunkSize,
+                       @Value("${orders.import.queue-capacity:4}") int queueCapacity) {
+        if (chunkSize <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("chunk size and queue capacity must be positive");
+        }
+        this.customerOrderGroupRepository = customerOrderGroupRepository;
+        this.productRepository = productRepository;
+        this.checkpointRepository = checkpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public OrderImportReport importOrders(String importId, Reader input, OrderImportFormat format) {
+        if (importId == null || importId.isBlank()) {
+            throw new IllegalArgumentException("import id is required");
+        }
+        long committedRecords = checkpointRepository.findById(importId)
+                .map(OrderImportCheckpoint::getCommittedRecords)
+                .orElse(0L);
+        OrderImportReport report = new OrderImportReport(importId, committedRecords);
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        Future<?> reading = readers.submit(() -> read(input, format, committedRecords, chunks));
+        Lookups lookups = new Lookups();
+        try {
+            Chunk chunk;
+            while ((chunk = chunks.take()) != Chunk.END) {
+                if (chunk.failure != null) {
+                    throw new IllegalStateException("Import " + importId + " failed after record " + chunk.failedAfter, chunk.failure);
+                }
+                write(importId, chunk.orders, lookups, report);
+            }
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Import " + importId + " interrupted", e);
+        } finally {
+            reading.cancel(true);
+        }
+    }
+
+    private void read(Reader input, OrderImportFormat format, long recordsToSkip, BlockingQueue<Chunk> chunks) {
+        long lastRecord = 0;
+        try {
+            OrderImportReader reader = new OrderImportReader(new BufferedReader(input), format, objectMapper);
+            List<ImportedOrder> orders = new ArrayList<>(chunkSize);
+            while (reader.hasNext()) {
+                ImportedOrder order = reader.next();
+                lastRecord = order.record;
+                if (order.record <= recordsToSkip) {
+                    continue;
+                }
+                orders.add(order);
+                if (orders.size() == chunkSize) {
+                    chunks.put(new Chunk(orders));
+                    orders = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!orders.isEmpty()) {
+                chunks.put(new Chunk(orders));
+            }
+            chunks.put(Chunk.END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            // whatever stops the reader has to reach the importing thread, which waits on the queue
+            try {
+                chunks.put(new Chunk(e, lastRecord));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void write(String importId, List<ImportedOrder> orders, Lookups lookups, OrderImportReport report) {
+        lookups.resolve(orders);
+        List<ImportedOrder> valid = new ArrayList<>(orders.size());
+        for (ImportedOrder order : orders) {
+            String problem = lookups.problemWith(order);
+            if (problem == null) {
+                valid.add(order);
+            } else {
+                report.rejected(order, problem);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            for (ImportedOrder imported : valid) {
+                persist(imported, lookups.groupOf(imported.customerId));
+            }
+            OrderImportCheckpoint checkpoint = checkpointRepository.findById(importId)
+                    .orElseGet(() -> new OrderImportCheckpoint(importId));
+            checkpoint.chunkCommitted(orders.size(), valid.size(), orders.size() - valid.size());
+            checkpointRepository.save(checkpoint);
+            entityManager.flush();
+            entityManager.clear();
+        });
+        report.imported(valid.size());
+    }
+
+    private void persist(ImportedOrder imported, Long groupId) {
+        Order order = new Order();
+        order.setOrderType(Order.OrderType.valueOf(imported.orderType));
+        order.setOrderState(Order.OrderState.valueOf(imported.orderState));
+        order.setCustomerOrderGroup(entityManager.getReference(CustomerOrderGroup.class, groupId));
+        entityManager.persist(order);
+        for (ImportedOrder.Line importedLine : imported.lines) {
+            OrderLine line = new OrderLine();
+            line.setOrder(order);
+            line.setProduct(entityManager.getReference(Product.class, importedLine.productId));
+            line.setQuantity(importedLine.quantity);
+            line.setPrice(importedLine.price);
+            entityManager.persist(line);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Customers and products seen so far in one import, so that every id is looked up at most once.
+     */
+    private class Lookups {
+        private final Map<Long, Long> groupsByCustomer = new HashMap<>();
+        private final Set<Long> customersWithoutGroup = new HashSet<>();
+        private final Set<Long> products = new HashSet<>();
+        private final Set<Long> missingProducts = new HashSet<>();
+
+        void resolve(List<ImportedOrder> orders) {
+            Set<Long> customerIds = new HashSet<>();
+            Set<Long> productIds = new HashSet<>();
+            for (ImportedOrder order : orders) {
+                if (order.customerId != null && !groupsByCustomer.containsKey(order.customerId) && !customersWithoutGroup.contains(order.customerId)) {
+                    customerIds.add(order.customerId);
+                }
+                for (ImportedOrder.Line line : order.lines) {
+                    if (line.productId != null && !products.contains(line.productId) && !missingProducts.contains(line.productId)) {
+                        productIds.add(line.productId);
+                    }
+                }
+            }
+            if (!customerIds.isEmpty()) {
+                for (Object[] row : customerOrderGroupRepository.findGroupIdsOfCustomers(customerIds)) {
+                    groupsByCustomer.put((Long) row[0], (Long) row[1]);
+                }
+                customerIds.removeAll(groupsByCustomer.keySet());
+                customersWithoutGroup.addAll(customerIds);
+            }
+            if (!productIds.isEmpty()) {
+                Set<Long> existing = productRepository.findExistingIds(productIds);
+                products.addAll(existing);
+                productIds.removeAll(existing);
+                missingProducts.addAll(productIds);
+            }
+        }
+
+        Long groupOf(Long customerId) {
+            return groupsByCustomer.get(customerId);
+        }
+
+        String problemWith(ImportedOrder order) {
+            if (order.malformed != null) {
+                return order.malformed;
+            }
+            if (order.customerId == null) {
+                return "missing customerId";
+            }
+            if (!groupsByCustomer.containsKey(order.customerId)) {
+                return "unknown customer " + order.customerId;
+            }
+            if (!isOneOf(order.orderType, Order.OrderType.values())) {
+                return "unknown orderType " + order.orderType;
+            }
+            if (!isOneOf(order.orderState, Order.OrderState.values())) {
+                return "unknown orderState " + order.orderState;
+            }
+            if (order.lines.isEmpty()) {
+                return "order has no lines";
+            }
+            for (ImportedOrder.Line line : order.lines) {
+                if (line.productId == null || !products.contains(line.productId)) {
+                    return "unknown product " + line.productId;
+                }
+                if (line.quantity == null || line.quantity <= 0) {
+                    return "quantity must be positive for product " + line.productId;
+                }
+                if (line.price == null || line.price.compareTo(BigDecimal.ZERO) < 0) {
+                    return "price must not be negative for product " + line.productId;
+                }
+            }
+            return null;
+        }
+
+        private boolean isOneOf(String name, Enum<?>[] values) {
+            return Arrays.stream(values).anyMatch(value -> value.name().equals(name));
+        }
+    }
+
+    private static class Chunk {
+        static final Chunk END = new Chunk(List.of());
+
+        private final List<ImportedOrder> orders;
+        private final Throwable failure;
+        private final long failedAfter;
+
+        private Chunk(List<ImportedOrder> orders) {
+            this.orders = orders;
+            this.failure = null;
+            this.failedAfter = 0;
+        }
+
+        private Chunk(Throwable failure, long failedAfter) {
+            this.orders = List.of();
+            this.failure = failure;
+            this.failedAfter = failedAfter;
+        }
+    }
+}
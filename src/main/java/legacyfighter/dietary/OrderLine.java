@@ -4,10 +4,12 @@ import javax.persistence.*;
 import java.math.BigDecimal;
 
 @Entity
+@EntityListeners(OrderTaxListener.class)
 public class OrderLine {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "order_line_seq")
+    @SequenceGenerator(name = "order_line_seq", allocationSize = 50)
     private Long id;
 
     private BigDecimal price;
@@ -30,6 +32,7 @@ public class OrderLine {
 
     public void setPrice(BigDecimal price) {
         this.price = price;
+        orderItemsChanged();
     }
 
     public Product getProduct() {
@@ -46,6 +49,7 @@ public class OrderLine {
 
     public void setQuantity(int quantity) {
         this.quantity = quantity;
+        orderItemsChanged();
     }
 
     public Order getOrder() {
@@ -53,6 +57,24 @@ public class OrderLine {
     }
 
     public void setOrder(Order order) {
+        orderItemsChanged();
         this.order = order;
+        orderItemsChanged();
+    }
+
+    BigDecimal getValue() {
+        return price == null ? BigDecimal.ZERO : price.multiply(BigDecimal.valueOf(quantity));
+    }
+
+    // a line deleted on its own, instead of through Order.removeItem, still drops the order's total
+    @PreRemove
+    void removed() {
+        orderItemsChanged();
+    }
+
+    private void orderItemsChanged() {
+        if (order != null) {
+            order.itemsChanged();
+        }
     }
 }
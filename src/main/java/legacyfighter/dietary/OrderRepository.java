@@ -1,9 +1,57 @@
 package legacyfighter.dietary;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+public interface OrderRepository extends JpaRepository<Order, Long>, OrderTaxRulesRepository {
+
+    int STREAM_CHUNK_SIZE = 500;
+
+    String ORDER_DTO = "select new legacyfighter.dietary.OrderDto(o.id, o.confirmationTimestamp, o.orderType, o.orderState, c.id, c.name) " +
+            "from Order o join o.customerOrderGroup g join g.customer c ";
 
-public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByOrderState(Order.OrderState state);
+
+    // order id, its stored total (null until cached) and the id of one of its rules (null when it has none),
+    // one row per rule in the order of the chain
+    @Query("select o.id, o.total, r.id from Order o left join o.taxRules r where o.id in :ids order by o.id, index(r)")
+    List<Object[]> findTotalsAndTaxRuleIdsByIdIn(@Param("ids") Collection<Long> orderIds);
+
+    // pairs of order id and the sum of price * quantity over its lines, orders without lines are left out
+    @Query("select l.order.id, sum(l.price * l.quantity) from OrderLine l where l.order.id in :ids group by l.order.id")
+    List<Object[]> sumLineValuesOf(@Param("ids") Collection<Long> orderIds);
+
+    @Query("select o.id from Order o where o.orderState = :state order by o.id")
+    List<Long> findIdsByOrderState(@Param("state") Order.OrderState state);
+
+    @Query("select o.id from Order o join o.customerOrderGroup g join g.customer c " +
+            "where o.orderState = :state and c.type = :customerType")
+    List<Long> findIdsByOrderStateAndCustomerType(@Param("state") Order.OrderState state,
+                                                  @Param("customerType") Customer.Type customerType);
+
+    // OrderDto projections read the order with its customer in one statement, without loading entities
+
+    @Query(ORDER_DTO + "where g.path like concat(:path, '%') order by o.id")
+    List<OrderDto> findDtosInSubtreeOf(@Param("path") String groupPath);
+
+    @Query(ORDER_DTO + "where g.path like concat(:path, '%') and o.id > :afterId order by o.id")
+    List<OrderDto> findDtosInSubtreeOf(@Param("path") String groupPath, @Param("afterId") Long afterOrderId, Pageable page);
+
+    @Query(ORDER_DTO + "where o.id = :orderId and g.path like concat(:path, '%')")
+    Optional<OrderDto> findDtoInSubtreeOf(@Param("orderId") Long orderId, @Param("path") String groupPath);
+
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_CHUNK_SIZE))
+    @Query(ORDER_DTO + "where g.path like concat(:path, '%') order by o.id")
+    Stream<OrderDto> streamDtosInSubtreeOf(@Param("path") String groupPath);
 }
@@ -1,18 +1,22 @@
 package legacyfighter.dietary;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class OrderService {
 
+    static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private CustomerService customerService;
 
@@ -28,74 +32,151 @@ public class OrderService {
     @Autowired
     private AuthenticationContextFacade authenticationContextFacade;
 
+    @Autowired
+    private TaxEvaluatorCache taxEvaluatorCache;
+
+    @Autowired
+    private BatchTaxCalculator batchTaxCalculator;
+
+    @Autowired
+    private OrderTaxProjection orderTaxProjection;
+
     @Transactional
     public List<OrderDto> getOrdersForCompany(Long customerId) {
-        CustomerDto customerDto = customerService.getCustomerBy(customerId);
-        Customer customer = customerRepository.getOne(customerDto.getId());
-        if (!customer.getType().equals(Customer.Type.Company) && !customer.getType().equals(Customer.Type.Division)) {
-            throw new IllegalStateException("not a company nor division");
-        }
-        return getOrdersIncludingSubordinates(customerId);
+        return getOrdersIncludingSubordinates(findCompanyOrDivision(customerId));
+    }
+
+    @Transactional
+    public List<OrderDto> getOrdersForCompany(Long customerId, Long afterOrderId, int pageSize) {
+        return getOrdersIncludingSubordinates(findCompanyOrDivision(customerId), afterOrderId, pageSize);
+    }
+
+    @Transactional
+    public void streamOrdersForCompany(Long customerId, Consumer<OrderDto> consumer) {
+        streamOrdersIncludingSubordinates(findCompanyOrDivision(customerId), consumer);
     }
 
     @Transactional
     public List<OrderDto> getOrdersForAdmin(Long customerId) {
-        CustomerDto customerDto = customerService.getCustomerBy(customerId);
-        Customer customer = customerRepository.getOne(customerDto.getId());
-        if (!customer.getType().equals(Customer.Type.Admin)) {
-            throw new IllegalStateException("not an admin");
-        }
-        return getOrdersIncludingSubordinates(customerId);
+        return getOrdersIncludingSubordinates(findAdmin(customerId));
     }
 
     @Transactional
-    public List<OrderDto> getOrdersIncludingSubordinates(Long customerId) {
-        CustomerDto customerDto = customerService.getCustomerBy(customerId);
-        Customer customer = customerRepository.getOne(customerDto.getId());
-        CustomerOrderGroup group = customer.getGroup();
-        if (group == null) {
-            throw new IllegalStateException("group cannot be null");
+    public List<OrderDto> getOrdersForAdmin(Long customerId, Long afterOrderId, int pageSize) {
+        return getOrdersIncludingSubordinates(findAdmin(customerId), afterOrderId, pageSize);
+    }
+
+    @Transactional
+    public void streamOrdersForAdmin(Long customerId, Consumer<OrderDto> consumer) {
+        streamOrdersIncludingSubordinates(findAdmin(customerId), consumer);
+    }
+
+    /**
+     * The logged-in customer may read orders of a company or division only if it lies in the caller's subtree.
+     */
+    @Transactional
+    public void checkCompanyVisibleToLoggedCustomer(Long customerId) {
+        checkVisibleToLoggedCustomer(findCompanyOrDivision(customerId));
+    }
+
+    @Transactional
+    public void checkAdminVisibleToLoggedCustomer(Long customerId) {
+        checkVisibleToLoggedCustomer(findAdmin(customerId));
+    }
+
+    /**
+     * Importing orders writes into any customer's hierarchy, so only an admin may do it.
+     */
+    @Transactional
+    public void checkLoggedCustomerIsAdmin() {
+        String authentication = authenticationContextFacade.getAuthentication().getName();
+        Customer caller = customerRepository.findByName(authentication);
+        if (caller == null || !caller.getType().equals(Customer.Type.Admin)) {
+            throw new IllegalStateException("only an admin may import orders");
         }
-        Set<OrderDto> orders = group.getOrders().stream().map(OrderDto::new).collect(Collectors.toSet());
-        Set<CustomerOrderGroup> childs = group.getChilds();
-        if (childs != null) {
+    }
 
-            childs.forEach(child -> orders.addAll(getOrdersIncludingSubordinates(child.getCustomer().getId())));
+    private void checkVisibleToLoggedCustomer(Customer customer) {
+        String authentication = authenticationContextFacade.getAuthentication().getName();
+        Customer caller = customerRepository.findByName(authentication);
+        if (caller == null) {
+            throw new IllegalStateException("logged customer not found");
+        }
+        if (!groupOf(customer).isInSubtreeOf(groupOf(caller))) {
+            throw new IllegalStateException("customer is outside of the caller's hierarchy");
+        }
+    }
 
+    @Transactional
+    public List<OrderDto> getOrdersIncludingSubordinates(Long customerId) {
+        return getOrdersIncludingSubordinates(findCustomer(customerId));
+    }
+
+    private List<OrderDto> getOrdersIncludingSubordinates(Customer customer) {
+        return orderRepository.findDtosInSubtreeOf(groupOf(customer).getPath());
+    }
 
+    /**
+     * Keyset page: orders of the subtree with id greater than afterOrderId (null for the first page), ordered by id.
+     * Pages larger than MAX_PAGE_SIZE are cut down to it.
+     */
+    private List<OrderDto> getOrdersIncludingSubordinates(Customer customer, Long afterOrderId, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
         }
-        return new ArrayList<>(orders);
+        long after = afterOrderId == null ? Long.MIN_VALUE : afterOrderId;
+        return orderRepository.findDtosInSubtreeOf(groupOf(customer).getPath(), after, PageRequest.of(0, Math.min(pageSize, MAX_PAGE_SIZE)));
+    }
 
+    /**
+     * Orders are read as projections through a database cursor, so memory use does not grow
+     * with the size of the subtree.
+     */
+    private void streamOrdersIncludingSubordinates(Customer customer, Consumer<OrderDto> consumer) {
+        try (Stream<OrderDto> orders = orderRepository.streamDtosInSubtreeOf(groupOf(customer).getPath())) {
+            orders.forEach(consumer);
+        }
     }
 
-    private List<OrderDto> fetchChildOrders(CustomerOrderGroup group, Set<OrderDto> orders) {
+    private CustomerOrderGroup groupOf(Customer customer) {
+        CustomerOrderGroup group = customer.getGroup();
         if (group == null) {
             throw new IllegalStateException("group cannot be null");
         }
-        orders.addAll(group.getOrders().stream().map(OrderDto::new).collect(Collectors.toSet()));
-        Set<CustomerOrderGroup> childs = group.getChilds();
-        if (childs != null) {
-
-            childs.forEach(child -> orders.addAll(fetchChildOrders(child.getCustomer().getCustomerOrderGroup(), orders)));
+        return group;
+    }
 
+    private Customer findCompanyOrDivision(Long customerId) {
+        Customer customer = findCustomer(customerId);
+        if (!customer.getType().equals(Customer.Type.Company) && !customer.getType().equals(Customer.Type.Division)) {
+            throw new IllegalStateException("not a company nor division");
+        }
+        return customer;
+    }
 
+    private Customer findAdmin(Long customerId) {
+        Customer customer = findCustomer(customerId);
+        if (!customer.getType().equals(Customer.Type.Admin)) {
+            throw new IllegalStateException("not an admin");
         }
-        return new ArrayList<>(orders);
+        return customer;
+    }
 
+    private Customer findCustomer(Long customerId) {
+        return customerRepository.findById(customerId)
+                .orElseThrow(IllegalArgumentException::new);
     }
 
+    /**
+     * The order is visible when its group lies in the subtree of the caller's group, which is
+     * a prefix match on the group path, so the cost does not depend on how many orders the caller sees.
+     */
     @Transactional
     public OrderDto getOrderById(Long orderId) {
         String authentication = authenticationContextFacade.getAuthentication().getName();
         Customer c = customerRepository.findByName(authentication);
-        List<OrderDto> getOrdersIncludingSubordinates = getOrdersIncludingSubordinates(c.getId());
-
-        OrderDto requested = new OrderDto(orderRepository.getOne(orderId));
-        if (getOrdersIncludingSubordinates.contains(requested)) {
-            return requested;
-        }
-
-        return null;
+        return orderRepository.findDtoInSubtreeOf(orderId, groupOf(c).getPath())
+                .orElse(null);
     }
 
     @Transactional
@@ -106,7 +187,7 @@ public class OrderService {
             if (!c.getType().equals(Customer.Type.Company) && !c.getType().equals(Customer.Type.Division)) {
                 throw new IllegalStateException("not a company nor division");
             }
-            return getOrdersIncludingSubordinates(c.getId());
+            return getOrdersIncludingSubordinates(c);
         } else {
             return customerService.getIndividualOrdersForCustomer(c.getId());
         }
@@ -115,15 +196,32 @@ public class OrderService {
     @Transactional
     public BigDecimal calculateTaxForOrder(Long orderId) {
         Order order = orderRepository.getOne(orderId);
-        BigDecimal initialValue = BigDecimal.ZERO;
-        for (TaxRule tax : order.getTaxRules()) {
-            if (tax.isLinear() && tax.getaFactor() != null && tax.getbFactor() != null) {
-                initialValue = initialValue.multiply(new BigDecimal(tax.getaFactor())).add(new BigDecimal(tax.getbFactor()));
-            }
-            if (tax.isSquare() && tax.getbSquareFactor() != null && tax.getaSquareFactor() != null && tax.getcSquareFactor() != null) {
-                initialValue = initialValue.pow(2).multiply(new BigDecimal(tax.getaSquareFactor())).add((initialValue.multiply(new BigDecimal(tax.getbFactor())))).add(new BigDecimal(tax.getcSquareFactor()));
-            }
+        BigDecimal total;
+        if (order.isTotalKnown()) {
+            total = order.getTotal();
+        } else {
+            // summed up by the database for this call only, the order is not changed by reading its tax
+            List<Object[]> sum = orderRepository.sumLineValuesOf(List.of(orderId));
+            total = sum.isEmpty() ? BigDecimal.ZERO : (BigDecimal) sum.get(0)[1];
         }
-        return initialValue;
+        return taxEvaluatorCache.forRules(order.getTaxRules()).evaluate(total);
+    }
+
+    @Transactional
+    public Map<Long, BigDecimal> calculateTaxForOrders(Collection<Long> orderIds) {
+        return batchTaxCalculator.calculate(orderIds);
+    }
+
+    /**
+     * Reads taxes from the materialized order_tax table, computing and storing the missing ones.
+     */
+    @Transactional
+    public Map<Long, BigDecimal> findTaxForOrders(Collection<Long> orderIds) {
+        return orderTaxProjection.taxesOf(orderIds);
+    }
+
+    @Transactional
+    public Map<Long, BigDecimal> calculateTaxForOrders(Order.OrderState state) {
+        return batchTaxCalculator.calculate(orderRepository.findIdsByOrderState(state));
     }
 }
\ No newline at end of file
@@ -0,0 +1,70 @@
+package legacyfighter.dietary;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Materialized tax of an order, together with the order total and the rule chain it was computed from.
+ */
+@Entity
+@Table(name = "order_tax")
+public class OrderTax {
+
+    @Id
+    private Long orderId;
+
+    @Column(precision = 65, scale = 10)
+    private BigDecimal tax;
+
+    private BigDecimal orderTotal;
+
+    private long ruleSetVersion;
+
+    public OrderTax() {
+    }
+
+    OrderTax(Long orderId, BigDecimal orderTotal, BigDecimal tax, long ruleSetVersion) {
+        this.orderId = orderId;
+        this.orderTotal = orderTotal;
+        this.tax = tax;
+        this.ruleSetVersion = ruleSetVersion;
+    }
+
+    /**
+     * Fingerprint of the ids of a rule chain, see {@link TaxEvaluatorCache#keyOf(List)}. The ids are taken
+     * in the order the rules are applied, as the same rules in another order give another tax.
+     */
+    static long ruleSetVersionOf(List<Long> ruleIds) {
+        long version = 1125899906842597L;
+        for (Long ruleId : ruleIds) {
+            version = 31 * version + ruleId;
+        }
+        return version;
+    }
+
+    void recomputedAs(OrderTax computed) {
+        this.orderTotal = computed.orderTotal;
+        this.tax = computed.tax;
+        this.ruleSetVersion = computed.ruleSetVersion;
+    }
+
+    public Long getOrderId() {
+        return orderId;
+    }
+
+    public BigDecimal getTax() {
+        return tax;
+    }
+
+    public BigDecimal getOrderTotal() {
+        return orderTotal;
+    }
+
+    public long getRuleSetVersion() {
+        return ruleSetVersion;
+    }
+}
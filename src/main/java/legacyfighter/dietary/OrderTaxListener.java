@@ -0,0 +1,40 @@
+package legacyfighter.dietary;
+
+import org.springframework.beans.factory.ObjectProvider;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+import java.util.List;
+
+/**
+ * Tells {@link OrderTaxProjection} about orders whose lines or rules may have changed. Hibernate creates
+ * the listener through Spring; the projection is looked up on first use, as the repositories it is built
+ * on need the entity manager factory this listener is part of.
+ */
+class OrderTaxListener {
+
+    private final ObjectProvider<OrderTaxProjection> orderTaxProjection;
+
+    OrderTaxListener(ObjectProvider<OrderTaxProjection> orderTaxProjection) {
+        this.orderTaxProjection = orderTaxProjection;
+    }
+
+    @PostPersist
+    void persisted(Object entity) {
+        if (entity instanceof Order) {
+            orderTaxProjection.getObject().orderCreated(((Order) entity).getId());
+        } else {
+            changed(entity);
+        }
+    }
+
+    @PostUpdate
+    @PostRemove
+    void changed(Object entity) {
+        Order order = entity instanceof OrderLine ? ((OrderLine) entity).getOrder() : (Order) entity;
+        if (order != null) {
+            orderTaxProjection.getObject().ordersChanged(List.of(order.getId()));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package legacyfighter.dietary;
+
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Keeps the order_tax table in step with the orders, so that taxes are read with a lookup by order id.
+ * Rows of orders whose items or rules change are computed again right before the changing transaction
+ * commits, after its last flush. Orders created by that transaction get no row yet, no reader can have
+ * seen them before it commits, so bulk inserts and imports compute nothing. Taxes of orders without a row are computed from committed data on first
+ * read and stored in a transaction of their own. A row a writer stored meanwhile wins over the one of a
+ * reader: the reader only inserts missing rows and gives up on a conflict, the writer always overwrites.
+ */
+@Component
+class OrderTaxProjection {
+
+    private final OrderTaxRepository orderTaxRepository;
+    private final OrderRepository orderRepository;
+    private final BatchTaxCalculator batchTaxCalculator;
+    private final TransactionTemplate storeTransaction;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    OrderTaxProjection(OrderTaxRepository orderTaxRepository,
+                       OrderRepository orderRepository,
+                       BatchTaxCalculator batchTaxCalculator,
+                       PlatformTransactionManager transactionManager) {
+        this.orderTaxRepository = orderTaxRepository;
+        this.orderRepository = orderRepository;
+        this.batchTaxCalculator = batchTaxCalculator;
+        this.storeTransaction = new TransactionTemplate(transactionManager);
+        this.storeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    Map<Long, BigDecimal> taxesOf(Collection<Long> orderIds) {
+        Map<Long, BigDecimal> taxes = new HashMap<>();
+        storedTaxesOf(orderIds).forEach((orderId, tax) -> taxes.put(orderId, tax.getTax()));
+        Set<Long> missing = new LinkedHashSet<>(orderIds);
+        missing.removeAll(taxes.keySet());
+        if (!missing.isEmpty()) {
+            storeMissing(missing).forEach(tax -> taxes.put(tax.getOrderId(), tax.getTax()));
+        }
+        return taxes;
+    }
+
+    void rulesChangedForOrdersOf(Order.OrderState state, Customer.Type customerType) {
+        ordersChanged(orderRepository.findIdsByOrderStateAndCustomerType(state, customerType));
+    }
+
+    /**
+     * Rows of the orders are computed again before the current transaction commits, once for all orders
+     * it changed. Also called while Hibernate flushes, so nothing is read or written here.
+     */
+    void ordersChanged(Collection<Long> orderIds) {
+        if (!orderIds.isEmpty()) {
+            pendingChanges().changed.addAll(orderIds);
+        }
+    }
+
+    void orderCreated(Long orderId) {
+        pendingChanges().created.add(orderId);
+    }
+
+    private PendingChanges pendingChanges() {
+        SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+        if (!session.isTransactionInProgress()) {
+            throw new IllegalStateException("order taxes can only be recomputed within a transaction");
+        }
+        PendingChanges pending = (PendingChanges) TransactionSynchronizationManager.getResource(session);
+        if (pending == null) {
+            PendingChanges changes = new PendingChanges();
+            TransactionSynchronizationManager.bindResource(session, changes);
+            session.getActionQueue().registerProcess((BeforeTransactionCompletionProcess) completing ->
+                    recompute(changes.toRecompute()));
+            session.getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, completed) ->
+                    TransactionSynchronizationManager.unbindResourceIfPossible(session));
+            pending = changes;
+        }
+        return pending;
+    }
+
+    private void recompute(List<Long> orderIds) {
+        if (orderIds.isEmpty()) {
+            return;
+        }
+        Map<Long, OrderTax> stored = storedTaxesOf(orderIds);
+        for (OrderTax tax : batchTaxCalculator.calculateOrderTaxes(orderIds)) {
+            OrderTax row = stored.remove(tax.getOrderId());
+            if (row == null) {
+                entityManager.persist(tax);
+            } else {
+                row.recomputedAs(tax);
+            }
+        }
+        // left are rows of orders which are gone
+        stored.values().forEach(entityManager::remove);
+        entityManager.flush();
+    }
+
+    private List<OrderTax> storeMissing(Collection<Long> orderIds) {
+        try {
+            return storeTransaction.execute(status -> {
+                List<OrderTax> taxes = batchTaxCalculator.calculateOrderTaxes(orderIds);
+                Map<Long, OrderTax> stored = storedTaxesOf(orderIds);
+                taxes.stream()
+                        .filter(tax -> !stored.containsKey(tax.getOrderId()))
+                        .forEach(entityManager::persist);
+                return taxes;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // another transaction stored some of the rows first, they are read from the table next time
+            return batchTaxCalculator.calculateOrderTaxes(orderIds);
+        }
+    }
+
+    private Map<Long, OrderTax> storedTaxesOf(Collection<Long> orderIds) {
+        Map<Long, OrderTax> stored = new HashMap<>();
+        for (List<Long> batch : batchesOf(new ArrayList<>(new LinkedHashSet<>(orderIds)))) {
+            orderTaxRepository.findAllById(batch).forEach(tax -> stored.put(tax.getOrderId(), tax));
+        }
+        return stored;
+    }
+
+    private static class PendingChanges {
+        private final Set<Long> changed = new HashSet<>();
+        private final Set<Long> created = new HashSet<>();
+
+        List<Long> toRecompute() {
+            List<Long> orderIds = new ArrayList<>(changed);
+            orderIds.removeAll(created);
+            return orderIds;
+        }
+    }
+
+    private static List<List<Long>> batchesOf(List<Long> ids) {
+        List<List<Long>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += BatchTaxCalculator.FETCH_BATCH_SIZE) {
+            batches.add(ids.subList(from, Math.min(from + BatchTaxCalculator.FETCH_BATCH_SIZE, ids.size())));
+        }
+        return batches;
+    }
+}
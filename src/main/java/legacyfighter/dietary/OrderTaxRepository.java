@@ -0,0 +1,6 @@
+package legacyfighter.dietary;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface OrderTaxRepository extends JpaRepository<OrderTax, Long> {
+}
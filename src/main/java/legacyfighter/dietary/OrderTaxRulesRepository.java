@@ -0,0 +1,10 @@
+package legacyfighter.dietary;
+
+public interface OrderTaxRulesRepository {
+
+    /**
+     * Attaches the rule to every Initial order of a Person in one statement. Orders already loaded
+     * into the current persistence context do not see the new rule until they are reloaded.
+     */
+    int addTaxRuleToInitialOrdersOfPersons(Long taxRuleId);
+}
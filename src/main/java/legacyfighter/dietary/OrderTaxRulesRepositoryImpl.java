@@ -0,0 +1,34 @@
+package legacyfighter.dietary;
+
+import org.hibernate.query.NativeQuery;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+class OrderTaxRulesRepositoryImpl implements OrderTaxRulesRepository {
+
+    private static final String ORDER_TAX_RULES_TABLE = "order_table_tax_rules";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * The statement declares the only table it writes. Without it Hibernate cannot tell what a native
+     * update touches and evicts every second-level cache region, customers and their groups included.
+     * The rule is appended at the end of each order's chain.
+     */
+    @Override
+    public int addTaxRuleToInitialOrdersOfPersons(Long taxRuleId) {
+        entityManager.flush();
+        return entityManager.createNativeQuery("insert into " + ORDER_TAX_RULES_TABLE + " (order_id, tax_rules_id, rule_index) " +
+                        "select o.id, :ruleId, (select count(*) from " + ORDER_TAX_RULES_TABLE + " r where r.order_id = o.id) " +
+                        "from order_table o " +
+                        "join customer_order_group g on g.id = o.customer_order_group_id " +
+                        "join customer c on c.id = g.customer_id " +
+                        "where o.order_state = 'Initial' and c.type = 'Person'")
+                .unwrap(NativeQuery.class)
+                .addSynchronizedQuerySpace(ORDER_TAX_RULES_TABLE)
+                .setParameter("ruleId", taxRuleId)
+                .executeUpdate();
+    }
+}
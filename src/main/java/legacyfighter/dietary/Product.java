@@ -2,14 +2,17 @@ package legacyfighter.dietary;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
 import java.math.BigDecimal;
 
 @Entity
 public class Product {
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+    @SequenceGenerator(name = "product_seq", allocationSize = 50)
     private Long id;
 
     private BigDecimal price;
@@ -22,6 +25,10 @@ public class Product {
 
     }
 
+    public Long getId() {
+        return id;
+    }
+
     void decrementCounter() {
         counter--;
     }
@@ -0,0 +1,14 @@
+package legacyfighter.dietary;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.Set;
+
+public interface ProductRepository extends JpaRepository<Product, Long> {
+
+    @Query("select p.id from Product p where p.id in :ids")
+    Set<Long> findExistingIds(@Param("ids") Collection<Long> productIds);
+}
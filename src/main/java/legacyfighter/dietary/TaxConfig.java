@@ -15,8 +15,12 @@ public class TaxConfig {
     }
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tax_config_seq")
+    @SequenceGenerator(name = "tax_config_seq", allocationSize = 50)
     private Long id;
+
+    @Version
+    private Long version;
     private String description;
     private String countryReason;
 
@@ -0,0 +1,94 @@
+package legacyfighter.dietary;
+
+import legacyfighter.dietary.config.ServiceMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded, least recently used cache of tax rules per country. Entries hold detached copies of the
+ * rules, so they can be shared between transactions. TaxRuleService invalidates a country whenever it
+ * mutates its config, both immediately and once the transaction completes, so that rules read inside
+ * a transaction which is later rolled back do not survive it. Every invalidation bumps the generation
+ * of the country; rules loaded under an older generation are returned but not cached.
+ */
+@Component
+class TaxConfigCache {
+
+    private final Map<String, List<TaxRule>> rules;
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    TaxConfigCache(@Value("${tax.config.cache.size:256}") int maxSize, ServiceMetrics serviceMetrics) {
+        this.rules = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<TaxRule>> eldest) {
+                return size() > maxSize;
+            }
+        });
+        serviceMetrics.registerCache("tax-config", hits::get, misses::get, rules::size);
+    }
+
+    List<TaxRule> rulesOf(String countryCode, Supplier<TaxConfig> loader) {
+        List<TaxRule> cached = rules.get(countryCode);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        long generation = generationOf(countryCode).get();
+        TaxConfig taxConfig = loader.get();
+        if (taxConfig == null) {
+            throw new IllegalArgumentException("No tax config for " + countryCode);
+        }
+        List<TaxRule> loaded = taxConfig.getTaxRules().stream()
+                .map(TaxRule::detachedCopy)
+                .collect(Collectors.toUnmodifiableList());
+        rules.compute(countryCode, (key, current) -> generationOf(key).get() == generation ? loaded : current);
+        return loaded;
+    }
+
+    void invalidate(String countryCode) {
+        evict(countryCode);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(countryCode);
+                }
+            });
+        }
+    }
+
+    private void evict(String countryCode) {
+        generationOf(countryCode).incrementAndGet();
+        rules.remove(countryCode);
+    }
+
+    private AtomicLong generationOf(String countryCode) {
+        return generations.computeIfAbsent(countryCode, key -> new AtomicLong());
+    }
+
+    long hitCount() {
+        return hits.get();
+    }
+
+    long missCount() {
+        return misses.get();
+    }
+
+    int size() {
+        return rules.size();
+    }
+}
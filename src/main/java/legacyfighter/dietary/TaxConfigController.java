@@ -1,11 +1,17 @@
 package legacyfighter.dietary;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
-import java.util.Map;
+import java.time.Instant;
 
 @RestController
 public class TaxConfigController {
@@ -13,10 +19,71 @@ public class TaxConfigController {
     @Autowired
     private TaxRuleService taxRuleService;
 
-    @GetMapping("/config")
-    public Map<String, List<TaxRule>> taxConfigs() {
-        return taxRuleService.findAllRules();
+    @GetMapping(value = "/config", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> serializedTaxConfigs(@RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                       @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        TaxConfigSnapshot snapshot = taxRuleService.configSnapshot();
+        boolean gzipped = acceptsGzip(acceptEncoding);
+        if (snapshot.matches(ifNoneMatch, gzipped)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.etag(gzipped))
+                    .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(snapshot.etag(gzipped))
+                .lastModified(snapshot.lastModified())
+                .contentType(MediaType.APPLICATION_JSON)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzipped) {
+            return response
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(snapshot.gzippedJson());
+        }
+        return response.body(snapshot.json());
     }
 
+    @GetMapping(value = "/config/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> taxConfigsChangedSince(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant since) {
+        TaxConfigSnapshot snapshot = taxRuleService.configSnapshot();
+        return ResponseEntity.ok()
+                .lastModified(snapshot.lastModified())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.jsonChangedSince(since));
+    }
 
+    /**
+     * Whether gzip has a non-zero q-value in the Accept-Encoding header, either listed by name or through "*".
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            double q = 1.0;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(parameter.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = q;
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip != null) {
+            return gzip > 0;
+        }
+        return any != null && any > 0;
+    }
 }
@@ -0,0 +1,141 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable view of all countries' tax rules, serialized once when built. Served by
+ * TaxConfigController until TaxRuleService changes some config. Like TaxConfigCache it holds
+ * detached copies of the rules, so no caller reaches a persistence context through it.
+ */
+final class TaxConfigSnapshot {
+
+    private final Map<String, List<TaxRule>> rules;
+    private final Map<String, Instant> lastModified;
+    private final Map<String, byte[]> countryJson;
+    private final byte[] json;
+    private final byte[] gzippedJson;
+    private final String etag;
+    private final String gzippedEtag;
+
+    private TaxConfigSnapshot(Map<String, List<TaxRule>> rules, Map<String, Instant> lastModified,
+                              Map<String, byte[]> countryJson, byte[] json) {
+        this.rules = rules;
+        this.lastModified = lastModified;
+        this.countryJson = countryJson;
+        this.json = json;
+        this.gzippedJson = gzip(json);
+        String digest = DigestUtils.md5DigestAsHex(json);
+        this.etag = "\"" + digest + "\"";
+        this.gzippedEtag = "\"" + digest + "-gzip\"";
+    }
+
+    static TaxConfigSnapshot of(List<TaxConfig> taxConfigs, ObjectMapper objectMapper) {
+        Map<String, List<TaxRule>> rules = taxConfigs.stream()
+                .collect(Collectors.groupingBy(TaxConfig::getCountryCode,
+                        LinkedHashMap::new,
+                        Collectors.collectingAndThen(Collectors.toList(),
+                                list -> list.stream()
+                                        .flatMap(config -> config.getTaxRules().stream())
+                                        .map(TaxRule::detachedCopy)
+                                        .collect(Collectors.toUnmodifiableList()))));
+        Map<String, Instant> lastModified = new HashMap<>();
+        taxConfigs.stream()
+                .filter(config -> config.getLastModifiedDate() != null)
+                .forEach(config -> lastModified.merge(config.getCountryCode(), config.getLastModifiedDate(),
+                        (first, second) -> first.isAfter(second) ? first : second));
+        Map<String, byte[]> countryJson = new LinkedHashMap<>();
+        rules.forEach((countryCode, countryRules) -> countryJson.put(countryCode, serialize(objectMapper, Map.of(countryCode, countryRules))));
+        return new TaxConfigSnapshot(Collections.unmodifiableMap(rules), lastModified, countryJson, serialize(objectMapper, rules));
+    }
+
+    Map<String, List<TaxRule>> rules() {
+        return rules;
+    }
+
+    byte[] json() {
+        return json;
+    }
+
+    byte[] gzippedJson() {
+        return gzippedJson;
+    }
+
+    /**
+     * Entity tag of the plain or of the gzipped representation; they differ, so caches never mix them up.
+     */
+    String etag(boolean gzipped) {
+        return gzipped ? gzippedEtag : etag;
+    }
+
+    Instant lastModified() {
+        return lastModified.values().stream().max(Comparator.naturalOrder()).orElse(Instant.EPOCH);
+    }
+
+    boolean matches(String ifNoneMatch, boolean gzipped) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag(gzipped))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JSON object with only the countries whose config was modified after the given moment,
+     * composed from the per-country objects serialized when the snapshot was built.
+     */
+    byte[] jsonChangedSince(Instant since) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<String, byte[]> country : countryJson.entrySet()) {
+            Instant modified = lastModified.get(country.getKey());
+            if (modified != null && !modified.isAfter(since)) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            byte[] fragment = country.getValue();
+            out.write(fragment, 1, fragment.length - 2);
+            first = false;
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+
+    private static byte[] serialize(ObjectMapper objectMapper, Object value) {
+        try {
+            return objectMapper.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize tax configs", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,58 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Holds the current TaxConfigSnapshot. It is rebuilt on the first read after a config change;
+ * like TaxConfigCache, a change invalidates it immediately and again when its transaction completes.
+ */
+@Component
+class TaxConfigSnapshots {
+
+    private final ObjectMapper objectMapper;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Built current;
+
+    TaxConfigSnapshots(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    TaxConfigSnapshot current(Supplier<List<TaxConfig>> loader) {
+        long expected = generation.get();
+        Built built = current;
+        if (built == null || built.generation != expected) {
+            built = new Built(expected, TaxConfigSnapshot.of(loader.get(), objectMapper));
+            current = built;
+        }
+        return built.snapshot;
+    }
+
+    void invalidate() {
+        generation.incrementAndGet();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    generation.incrementAndGet();
+                }
+            });
+        }
+    }
+
+    private static class Built {
+        private final long generation;
+        private final TaxConfigSnapshot snapshot;
+
+        private Built(long generation, TaxConfigSnapshot snapshot) {
+            this.generation = generation;
+            this.snapshot = snapshot;
+        }
+    }
+}
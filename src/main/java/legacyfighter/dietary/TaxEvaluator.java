@@ -0,0 +1,94 @@
+package legacyfighter.dietary;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable, precompiled form of a tax rule chain. Every rule is a step v -> a * v^2 + b * v + c
+ * (linear rules have a = 0). Integral values, whatever their scale, are evaluated on primitive longs; when they overflow
+ * or the initial value has a fraction, the chain is evaluated on BigDecimals built once at compile time.
+ */
+final class TaxEvaluator {
+
+    private final long[] square;
+    private final long[] linear;
+    private final long[] constant;
+
+    private final BigDecimal[] squareDecimal;
+    private final BigDecimal[] linearDecimal;
+    private final BigDecimal[] constantDecimal;
+
+    private TaxEvaluator(long[] square, long[] linear, long[] constant) {
+        this.square = square;
+        this.linear = linear;
+        this.constant = constant;
+        this.squareDecimal = decimals(square);
+        this.linearDecimal = decimals(linear);
+        this.constantDecimal = decimals(constant);
+    }
+
+    static TaxEvaluator compile(List<TaxRule> rules) {
+        List<long[]> steps = new ArrayList<>();
+        for (TaxRule tax : rules) {
+            if (tax.isLinear() && tax.getaFactor() != null && tax.getbFactor() != null) {
+                steps.add(new long[]{0, tax.getaFactor(), tax.getbFactor()});
+            }
+            if (tax.isSquare() && tax.getaSquareFactor() != null && tax.getbSquareFactor() != null && tax.getcSquareFactor() != null) {
+                steps.add(new long[]{tax.getaSquareFactor(), tax.getbSquareFactor(), tax.getcSquareFactor()});
+            }
+        }
+        long[] square = new long[steps.size()];
+        long[] linear = new long[steps.size()];
+        long[] constant = new long[steps.size()];
+        for (int i = 0; i < steps.size(); i++) {
+            square[i] = steps.get(i)[0];
+            linear[i] = steps.get(i)[1];
+            constant[i] = steps.get(i)[2];
+        }
+        return new TaxEvaluator(square, linear, constant);
+    }
+
+    BigDecimal evaluate(BigDecimal initialValue) {
+        // amounts like 8.00 are integral too, whatever scale they were stored with
+        initialValue = initialValue.stripTrailingZeros();
+        if (initialValue.scale() <= 0) {
+            try {
+                return BigDecimal.valueOf(evaluate(initialValue.longValueExact()));
+            } catch (ArithmeticException overflow) {
+                // fall through to arbitrary precision
+            }
+        }
+        return evaluateDecimal(initialValue);
+    }
+
+    private long evaluate(long value) {
+        for (int i = 0; i < linear.length; i++) {
+            long next = Math.addExact(Math.multiplyExact(value, linear[i]), constant[i]);
+            if (square[i] != 0) {
+                next = Math.addExact(next, Math.multiplyExact(Math.multiplyExact(value, value), square[i]));
+            }
+            value = next;
+        }
+        return value;
+    }
+
+    private BigDecimal evaluateDecimal(BigDecimal value) {
+        for (int i = 0; i < linear.length; i++) {
+            BigDecimal next = value.multiply(linearDecimal[i]).add(constantDecimal[i]);
+            if (square[i] != 0) {
+                next = next.add(value.pow(2).multiply(squareDecimal[i]));
+            }
+            value = next;
+        }
+        return value;
+    }
+
+    private static BigDecimal[] decimals(long[] factors) {
+        BigDecimal[] result = new BigDecimal[factors.length];
+        for (int i = 0; i < factors.length; i++) {
+            result[i] = BigDecimal.valueOf(factors[i]);
+        }
+        return result;
+    }
+}
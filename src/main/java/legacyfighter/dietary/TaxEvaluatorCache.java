@@ -0,0 +1,53 @@
+package legacyfighter.dietary;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiled evaluators keyed by the ordered ids of the rules in a chain. Tax rules never change once
+ * persisted, so an entry stays valid for as long as the rules exist.
+ */
+@Component
+class TaxEvaluatorCache {
+
+    static final int MAX_ENTRIES = 10_000;
+
+    private final Map<List<Long>, TaxEvaluator> evaluators = new ConcurrentHashMap<>();
+
+    TaxEvaluator forRules(List<TaxRule> rules) {
+        List<Long> key = keyOf(rules);
+        if (key == null) {
+            return TaxEvaluator.compile(rules);
+        }
+        TaxEvaluator evaluator = evaluators.get(key);
+        if (evaluator == null) {
+            if (evaluators.size() >= MAX_ENTRIES) {
+                evaluators.clear();
+            }
+            evaluator = evaluators.computeIfAbsent(key, ignored -> TaxEvaluator.compile(rules));
+        }
+        return evaluator;
+    }
+
+    /**
+     * Ordered rule ids identifying a chain, or null when some rule is not persisted yet.
+     */
+    static List<Long> keyOf(List<TaxRule> rules) {
+        List<Long> key = new ArrayList<>(rules.size());
+        for (TaxRule rule : rules) {
+            if (rule.getId() == null) {
+                return null;
+            }
+            key.add(rule.getId());
+        }
+        return key;
+    }
+
+    int size() {
+        return evaluators.size();
+    }
+}
@@ -12,7 +12,8 @@ public class TaxRule {
     }
 
     @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "tax_rule_seq")
+    @SequenceGenerator(name = "tax_rule_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -57,6 +58,23 @@ public class TaxRule {
         return rule;
     }
 
+    /**
+     * Copy carrying the same id and factors, not attached to any persistence context nor to its config.
+     */
+    TaxRule detachedCopy() {
+        TaxRule copy = new TaxRule();
+        copy.id = id;
+        copy.taxCode = taxCode;
+        copy.isLinear = isLinear;
+        copy.aFactor = aFactor;
+        copy.bFactor = bFactor;
+        copy.isSquare = isSquare;
+        copy.aSquareFactor = aSquareFactor;
+        copy.bSquareFactor = bSquareFactor;
+        copy.cSquareFactor = cSquareFactor;
+        return copy;
+    }
+
     public boolean isLinear() {
         return isLinear;
     }
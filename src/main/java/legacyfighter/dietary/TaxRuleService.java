@@ -1,6 +1,7 @@
 package legacyfighter.dietary;
 
 
+import legacyfighter.dietary.config.RetryOnConflict;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -9,7 +10,6 @@ import java.time.Clock;
 import java.time.Instant;
 import java.time.Year;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Service
 public class TaxRuleService {
@@ -23,10 +23,20 @@ public class TaxRuleService {
     @Autowired
     private OrderRepository orderRepository;
 
+    @Autowired
+    private TaxConfigCache taxConfigCache;
+
+    @Autowired
+    private TaxConfigSnapshots taxConfigSnapshots;
+
+    @Autowired
+    private OrderTaxProjection orderTaxProjection;
+
     @Autowired
     private Clock clock;
 
     @Transactional
+    @RetryOnConflict
     public void addTaxRuleToCountry(String countryCode, int aFactor, int bFactor, String taxCode) {
         TaxRule taxRule = TaxRule.linearRule(aFactor, bFactor, taxCode, Year.now(clock));
 
@@ -37,30 +47,31 @@ public class TaxRuleService {
         }
 
         taxConfig.addTaxRule(taxRule, Instant.now(clock));
+        configChanged(taxConfig);
+        taxConfigRepository.flush();
 
-        List<Order> byOrderState = orderRepository.findByOrderState(Order.OrderState.Initial);
-        byOrderState.forEach(order -> {
-            if (order.getCustomerOrderGroup().getCustomer().getType().equals(Customer.Type.Person)) {
-                order.getTaxRules().add(taxRule);
-                orderRepository.save(order);
-            }
-        });
+        orderRepository.addTaxRuleToInitialOrdersOfPersons(taxRule.getId());
+        orderTaxProjection.rulesChangedForOrdersOf(Order.OrderState.Initial, Customer.Type.Person);
     }
 
     @Transactional
+    @RetryOnConflict
     public TaxConfig createTaxConfigWithRule(String countryCode, TaxRule taxRule) {
         return createTaxConfigWithRule(countryCode, 10, taxRule);
     }
 
     @Transactional
+    @RetryOnConflict
     public TaxConfig createTaxConfigWithRule(String countryCode, int maxRulesCount, TaxRule taxRule) {
         TaxConfig taxConfig = TaxConfig.from(countryCode, maxRulesCount);
         taxConfig.addTaxRule(taxRule, Instant.now(clock));
         taxConfigRepository.save(taxConfig);
+        configChanged(taxConfig);
         return taxConfig;
     }
 
     @Transactional
+    @RetryOnConflict
     public void addTaxRuleToCountry(String countryCode, int aFactor, int bFactor, int cFactor, String taxCode) {
         TaxRule taxRule = TaxRule.squareRule(aFactor, bFactor, cFactor, taxCode, Year.now(clock));
 
@@ -71,29 +82,35 @@ public class TaxRuleService {
         }
 
         taxConfig.addTaxRule(taxRule, Instant.now(clock));
+        configChanged(taxConfig);
     }
 
     @Transactional
+    @RetryOnConflict
     public void deleteRule(Long taxRuleId, Long configId) {
         TaxRule taxRule = taxRuleRepository.getOne(taxRuleId);
         TaxConfig taxConfig = taxConfigRepository.getOne(configId);
         taxConfig.removeTaxRule(taxRule, Instant.now(clock));
+        configChanged(taxConfig);
     }
 
     @Transactional
     public List<TaxRule> findRules(String countryCode) {
-        return taxConfigRepository.findByCountryCode(countryCode).getTaxRules();
+        return taxConfigCache.rulesOf(countryCode, () -> taxConfigRepository.findByCountryCode(countryCode));
     }
 
+    @Transactional
     public Map<String, List<TaxRule>> findAllRules() {
-        return taxConfigRepository.findAll().stream()
-                .collect(Collectors.groupingBy(TaxConfig::getCountryCode,
-                        Collectors.mapping(
-                                TaxConfig::getTaxRules,
-                                Collectors.collectingAndThen(Collectors.toList(),
-                                        list -> list.stream()
-                                                .flatMap(List::stream)
-                                                .collect(Collectors.toList())))
-                ));
+        return taxConfigSnapshots.current(taxConfigRepository::findAll).rules();
+    }
+
+    @Transactional
+    public TaxConfigSnapshot configSnapshot() {
+        return taxConfigSnapshots.current(taxConfigRepository::findAll);
+    }
+
+    private void configChanged(TaxConfig taxConfig) {
+        taxConfigCache.invalidate(taxConfig.getCountryCode());
+        taxConfigSnapshots.invalidate();
     }
 }
@@ -1,6 +1,7 @@
 package legacyfighter.dietary.boundaries;
 
 import java.math.BigDecimal;
+import java.util.Objects;
 
 class Payer {
 
@@ -10,9 +11,14 @@ class Payer {
     private BigDecimal extraLimit;
 
     Payer(PayerId payerId, int age, BigDecimal availableLimit) {
+        this(payerId, age, availableLimit, BigDecimal.ZERO);
+    }
+
+    Payer(PayerId payerId, int age, BigDecimal availableLimit, BigDecimal extraLimit) {
         this.payerId = payerId;
         this.age = age;
         this.availableLimit = availableLimit;
+        this.extraLimit = extraLimit;
     }
 
     boolean isAtLeast20yo() {
@@ -34,6 +40,19 @@ class Payer {
     public void payUsingExtraLimit(BigDecimal amountToPay) {
         extraLimit = extraLimit.subtract(amountToPay);
     }
+
+    BigDecimal getAvailableLimit() {
+        return availableLimit;
+    }
+
+    BigDecimal getExtraLimit() {
+        return extraLimit;
+    }
+
+    void updateLimits(BigDecimal availableLimit, BigDecimal extraLimit) {
+        this.availableLimit = availableLimit;
+        this.extraLimit = extraLimit;
+    }
 }
 
 class PayerId {
@@ -42,5 +61,18 @@ class PayerId {
     PayerId(Long borrowerId) {
         this.borrowerId = borrowerId;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PayerId payerId = (PayerId) o;
+        return Objects.equals(borrowerId, payerId.borrowerId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(borrowerId);
+    }
 }
 
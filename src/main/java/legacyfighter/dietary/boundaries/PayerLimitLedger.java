@@ -0,0 +1,192 @@
+package legacyfighter.dietary.boundaries;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+/**
+ * In-memory limits of payers, in cents. Each payer has its own atomic counters, so payments of
+ * different payers never contend and payments of the same payer reserve their amount with a
+ * compare-and-set instead of an unsynchronized check-then-subtract. Changed payers are written
+ * back to PayerRepository in batches by flush(); flushes run one at a time and payers whose batch
+ * failed to save are kept for the next one. After a successful flush the accounts with nothing left to
+ * write are evicted, so the ledger holds only payers active since the last flush, and an evicted payer
+ * is loaded again from the repository. The ledger assumes it is the only writer of the limits of the
+ * payers it has loaded.
+ */
+class PayerLimitLedger {
+
+    private static final Logger log = LoggerFactory.getLogger(PayerLimitLedger.class);
+
+    private final PayerRepository payerRepository;
+    private final Map<PayerId, Account> accounts = new ConcurrentHashMap<>();
+    private final Set<PayerId> changed = ConcurrentHashMap.newKeySet();
+
+    PayerLimitLedger(PayerRepository payerRepository) {
+        this.payerRepository = payerRepository;
+    }
+
+    Payer payer(PayerId payerId) {
+        return account(payerId).payer;
+    }
+
+    boolean tryPay(PayerId payerId, BigDecimal amount) {
+        long cents = toCents(amount);
+        return change(payerId, account -> {
+            AtomicLong available = account.availableCents;
+            long current;
+            do {
+                current = available.get();
+                if (current < cents) {
+                    return false;
+                }
+            } while (!available.compareAndSet(current, current - cents));
+            return true;
+        });
+    }
+
+    void payUsingExtraLimit(PayerId payerId, BigDecimal amount) {
+        long cents = toCents(amount);
+        change(payerId, account -> {
+            account.extraCents.addAndGet(-cents);
+            return true;
+        });
+    }
+
+    int loadedPayers() {
+        return accounts.size();
+    }
+
+    BigDecimal availableLimitOf(PayerId payerId) {
+        return fromCents(account(payerId).availableCents.get());
+    }
+
+    BigDecimal extraLimitOf(PayerId payerId) {
+        return fromCents(account(payerId).extraCents.get());
+    }
+
+    synchronized int flush() {
+        List<PayerId> flushed = new ArrayList<>();
+        List<Payer> toSave = new ArrayList<>();
+        for (PayerId payerId : changed) {
+            changed.remove(payerId);
+            flushed.add(payerId);
+            Account account = accounts.get(payerId);
+            synchronized (account.payer) {
+                account.payer.updateLimits(fromCents(account.availableCents.get()), fromCents(account.extraCents.get()));
+            }
+            toSave.add(account.payer);
+        }
+        if (!toSave.isEmpty()) {
+            try {
+                payerRepository.saveAll(toSave);
+            } catch (RuntimeException e) {
+                changed.addAll(flushed);
+                throw e;
+            }
+        }
+        accounts.keySet().forEach(this::evictIfWritten);
+        return toSave.size();
+    }
+
+    /**
+     * Changes of an account run under its shared lock, so they still run concurrently with each other, while
+     * eviction takes the exclusive one. A change that finds its account evicted retries on a freshly loaded one.
+     */
+    private boolean change(PayerId payerId, Predicate<Account> change) {
+        while (true) {
+            Account account = account(payerId);
+            Lock lock = account.inUse.readLock();
+            lock.lock();
+            try {
+                if (account.evicted) {
+                    continue;
+                }
+                boolean changedLimits = change.test(account);
+                if (changedLimits) {
+                    changed.add(payerId);
+                }
+                return changedLimits;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // an account in use or changed since it was written stays until a later flush
+    private void evictIfWritten(PayerId payerId) {
+        Account account = accounts.get(payerId);
+        if (account == null) {
+            return;
+        }
+        Lock lock = account.inUse.writeLock();
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            if (!changed.contains(payerId)) {
+                account.evicted = true;
+                accounts.remove(payerId, account);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void flushEvery(Duration interval, ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    // an exception escaping a scheduled task would cancel all its later runs
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Flushing payer limits failed, will retry on the next run", e);
+        }
+    }
+
+    private Account account(PayerId payerId) {
+        return accounts.computeIfAbsent(payerId, id -> new Account(payerRepository.findById(id)));
+    }
+
+    private static long toCents(BigDecimal amount) {
+        try {
+            return amount.setScale(2, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount must be in whole cents: " + amount, e);
+        }
+    }
+
+    private static BigDecimal fromCents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static class Account {
+        private final Payer payer;
+        private final AtomicLong availableCents;
+        private final AtomicLong extraCents;
+        private final ReentrantReadWriteLock inUse = new ReentrantReadWriteLock();
+        private boolean evicted;
+
+        private Account(Payer payer) {
+            this.payer = payer;
+            this.availableCents = new AtomicLong(toCents(payer.getAvailableLimit()));
+            this.extraCents = new AtomicLong(toCents(payer.getExtraLimit()));
+        }
+    }
+}
@@ -1,6 +1,10 @@
 package legacyfighter.dietary.boundaries;
 
+import java.util.Collection;
+
 interface PayerRepository {
 
     Payer findById(PayerId payerId);
+
+    void saveAll(Collection<Payer> payers);
 }
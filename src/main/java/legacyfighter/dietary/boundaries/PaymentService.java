@@ -2,25 +2,75 @@ package legacyfighter.dietary.boundaries;
 
 
 import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 
 public class PaymentService {
 
     private static BigDecimal MIN_AMOUNT_OF_ONE_ORDER_TO_BE_VIP = new BigDecimal(100);
     private static int MIN_AMOUNT_OF_ORDERS_TO_BE_VIP = 10;
+    static final int VIP_STATUS_CACHE_SIZE = 10_000;
 
     private final PayerRepository payerRepository;
     private final ClientAddressRemoteService ordersRemoteService;
     private final OrderRemoteService orderRemoteService;
     private final ClaimsRemoteService claimsRemoteService;
+    private final ExecutorService vipChecksExecutor;
+    private final Duration vipCheckTimeout;
+    private final VipStatusCache vipStatusCache;
+    private final PayerLimitLedger limitLedger;
+
+    PaymentService(PayerRepository payerRepository, ClientAddressRemoteService payerAddressRemoteService, OrderRemoteService orderRemoteService, ClaimsRemoteService claimsRemoteService,
+                   Duration vipStatusTimeToLive) {
+        this(payerRepository, payerAddressRemoteService, orderRemoteService, claimsRemoteService, null, null, vipStatusTimeToLive);
+    }
+
+    PaymentService(PayerRepository payerRepository, ClientAddressRemoteService payerAddressRemoteService, OrderRemoteService orderRemoteService, ClaimsRemoteService claimsRemoteService,
+                   ExecutorService vipChecksExecutor, Duration vipCheckTimeout, Duration vipStatusTimeToLive) {
+        this(payerRepository, payerAddressRemoteService, orderRemoteService, claimsRemoteService, vipChecksExecutor, vipCheckTimeout,
+                new VipStatusCache(Clock.systemUTC(), vipStatusTimeToLive, VIP_STATUS_CACHE_SIZE));
+    }
 
-    PaymentService(PayerRepository payerRepository, ClientAddressRemoteService payerAddressRemoteService, OrderRemoteService orderRemoteService, ClaimsRemoteService claimsRemoteService) {
+    PaymentService(PayerRepository payerRepository, ClientAddressRemoteService payerAddressRemoteService, OrderRemoteService orderRemoteService, ClaimsRemoteService claimsRemoteService,
+                   ExecutorService vipChecksExecutor, Duration vipCheckTimeout, VipStatusCache vipStatusCache) {
+        this(payerRepository, payerAddressRemoteService, orderRemoteService, claimsRemoteService, vipChecksExecutor, vipCheckTimeout, vipStatusCache, null);
+    }
+
+    /**
+     * Remote VIP checks are issued in parallel on the given (bounded) executor. A check that does not answer
+     * within the timeout, counted from the moment it starts running, counts as failed, and the remaining checks are cancelled as soon as any check fails.
+     * The whole verification fails once the checks could have run one after another within their timeouts, counted
+     * from submission, so a saturated executor delays a payment by a bounded time instead of blocking it.
+     * Without an executor the checks run one after another on the calling thread.
+     * The number of qualifying orders is always read through the VipStatusCache and kept up to date by the payments
+     * made here; the constructors taking a time to live build one of VIP_STATUS_CACHE_SIZE payers.
+     * When a PayerLimitLedger is given, limits are reserved atomically through it instead of on Payer loaded
+     * from the repository.
+     */
+    PaymentService(PayerRepository payerRepository, ClientAddressRemoteService payerAddressRemoteService, OrderRemoteService orderRemoteService, ClaimsRemoteService claimsRemoteService,
+                   ExecutorService vipChecksExecutor, Duration vipCheckTimeout, VipStatusCache vipStatusCache, PayerLimitLedger limitLedger) {
+        if (vipStatusCache == null) {
+            throw new IllegalArgumentException("VIP status cache is required");
+        }
         this.payerRepository = payerRepository;
         this.ordersRemoteService = payerAddressRemoteService;
         this.orderRemoteService = orderRemoteService;
         this.claimsRemoteService = claimsRemoteService;
+        this.vipChecksExecutor = vipChecksExecutor;
+        this.vipCheckTimeout = vipCheckTimeout;
+        this.vipStatusCache = vipStatusCache;
+        this.limitLedger = limitLedger;
     }
 
     boolean pay(PayerId payerId, BigDecimal amountToPay) {
+        if (limitLedger != null) {
+            return payUsingLedger(payerId, amountToPay);
+        }
         Payer payer = payerRepository.findById(payerId);
         if (canAfford(amountToPay, payer)) {
             pay(amountToPay, payer);
@@ -33,14 +83,34 @@ public class PaymentService {
         }
     }
 
+    private boolean payUsingLedger(PayerId payerId, BigDecimal amountToPay) {
+        if (limitLedger.tryPay(payerId, amountToPay)) {
+            informAboutNewOrder(amountToPay, payerId);
+            return true;
+        } else if (payerIsVip(limitLedger.payer(payerId))) {
+            limitLedger.payUsingExtraLimit(payerId, amountToPay);
+            informAboutNewOrder(amountToPay, payerId);
+            return true;
+        } else {
+            return false;
+        }
+    }
+
     private void pay(BigDecimal amountToPay, Payer payer) {
         payer.pay(amountToPay);
-        orderRemoteService.informAboutNewOrderWithPayment(amountToPay);
+        informAboutNewOrder(amountToPay, payer.getPayerId());
     }
 
     private void payUsingExtraLimit(BigDecimal amountToPay, Payer payer) {
         payer.payUsingExtraLimit(amountToPay);
+        informAboutNewOrder(amountToPay, payer.getPayerId());
+    }
+
+    private void informAboutNewOrder(BigDecimal amountToPay, PayerId payerId) {
         orderRemoteService.informAboutNewOrderWithPayment(amountToPay);
+        if (amountToPay.compareTo(MIN_AMOUNT_OF_ONE_ORDER_TO_BE_VIP) > 0) {
+            vipStatusCache.qualifyingOrderPlaced(payerId);
+        }
     }
 
     private boolean canAfford(BigDecimal amountToPay, Payer payer) {
@@ -48,9 +118,49 @@ public class PaymentService {
     }
 
     private boolean payerIsVip(Payer payer) {
+        if (vipChecksExecutor != null) {
+            return isOldEnough(payer) && allPass(List.of(() -> hasEnoughOrders(payer), () -> addressIsInEurope(payer), () -> noClaimsBy(payer)));
+        }
         return hasEnoughOrders(payer) && addressIsInEurope(payer) && isOldEnough(payer) && noClaimsBy(payer);
     }
 
+    private boolean allPass(List<BooleanSupplier> checks) {
+        CompletableFuture<Boolean> verdict = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(checks.size());
+        List<Future<?>> running = new ArrayList<>(checks.size());
+        verdict.completeOnTimeout(false, vipCheckTimeout.toMillis() * checks.size(), TimeUnit.MILLISECONDS);
+        for (BooleanSupplier check : checks) {
+            CompletableFuture<Boolean> result = new CompletableFuture<>();
+            result.whenComplete((passed, error) -> {
+                if (error != null) {
+                    verdict.completeExceptionally(error);
+                } else if (!passed) {
+                    verdict.complete(false);
+                } else if (pending.decrementAndGet() == 0) {
+                    verdict.complete(true);
+                }
+            });
+            running.add(vipChecksExecutor.submit(() -> {
+                result.completeOnTimeout(false, vipCheckTimeout.toMillis(), TimeUnit.MILLISECONDS);
+                try {
+                    result.complete(check.getAsBoolean());
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }));
+        }
+        try {
+            return verdict.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            running.forEach(task -> task.cancel(true));
+        }
+    }
+
     private boolean noClaimsBy(Payer payer) {
         return claimsRemoteService.clientHasNoClaims(payer.getPayerId());
     }
@@ -64,10 +174,14 @@ public class PaymentService {
     }
 
     private boolean hasEnoughOrders(Payer payer) {
+        return vipStatusCache.qualifyingOrders(payer.getPayerId(), () -> countQualifyingOrders(payer)) > MIN_AMOUNT_OF_ORDERS_TO_BE_VIP;
+    }
+
+    private long countQualifyingOrders(Payer payer) {
         return orderRemoteService.getByPayerId(payer.getPayerId())
                 .stream()
                 .filter(w -> w.isMoreThan(MIN_AMOUNT_OF_ONE_ORDER_TO_BE_VIP))
-                .count() > MIN_AMOUNT_OF_ORDERS_TO_BE_VIP;
+                .count();
     }
 
 }
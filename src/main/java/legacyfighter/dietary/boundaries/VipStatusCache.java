@@ -0,0 +1,50 @@
+package legacyfighter.dietary.boundaries;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Number of orders qualifying a payer for VIP status, kept per payer so that repeat payments do not
+ * download the whole order history again. Entries live for a fixed time, measured on the given clock,
+ * and are evicted above the size limit. A payer's count is loaded at most once at a time, and payments
+ * made through PaymentService increment it in place; an increment arriving while the count is loaded
+ * waits for the load and is applied on top of it.
+ */
+class VipStatusCache {
+
+    private final Cache<PayerId, AtomicLong> entries;
+
+    VipStatusCache(Clock clock, Duration timeToLive, int maxSize) {
+        this.entries = Caffeine.newBuilder()
+                .ticker(() -> TimeUnit.MILLISECONDS.toNanos(clock.millis()))
+                .expireAfterWrite(timeToLive)
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .build();
+    }
+
+    long qualifyingOrders(PayerId payerId, LongSupplier loader) {
+        return entries.get(payerId, id -> new AtomicLong(loader.getAsLong())).get();
+    }
+
+    // compute, unlike computeIfPresent, waits for a load of the same payer in progress instead of seeing no entry
+    void qualifyingOrderPlaced(PayerId payerId) {
+        entries.asMap().compute(payerId, (id, qualifyingOrders) -> {
+            if (qualifyingOrders != null) {
+                qualifyingOrders.incrementAndGet();
+            }
+            return qualifyingOrders;
+        });
+    }
+
+    long size() {
+        entries.cleanUp();
+        return entries.estimatedSize();
+    }
+}
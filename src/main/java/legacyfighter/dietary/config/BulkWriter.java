@@ -0,0 +1,66 @@
+package legacyfighter.dietary.config;
+
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Iterator;
+
+/**
+ * Persists large numbers of new entities in chunks, one transaction per chunk. The persistence
+ * context is cleared after every chunk, so memory use does not grow with the number of entities,
+ * and inserts go out in JDBC batches. Entities may refer to entities persisted in earlier chunks.
+ * <p>
+ * Each chunk commits in a new transaction even when called within one, so chunks already written
+ * stay written if the caller rolls back, and the caller's persistence context is left untouched.
+ */
+@Component
+public class BulkWriter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    public BulkWriter(PlatformTransactionManager transactionManager, @Value("${bulk.chunk-size:1000}") int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be positive");
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.chunkSize = chunkSize;
+    }
+
+    public long persistAll(Iterator<?> entities) {
+        return persistAll(entities, null);
+    }
+
+    /**
+     * Same as {@link #persistAll(Iterator)}, with a JDBC batch size overriding hibernate.jdbc.batch_size.
+     */
+    public long persistAll(Iterator<?> entities, Integer jdbcBatchSize) {
+        long persisted = 0;
+        while (entities.hasNext()) {
+            persisted += transactionTemplate.execute(status -> {
+                if (jdbcBatchSize != null) {
+                    entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+                }
+                int inChunk = 0;
+                while (inChunk < chunkSize && entities.hasNext()) {
+                    entityManager.persist(entities.next());
+                    inChunk++;
+                }
+                entityManager.flush();
+                entityManager.clear();
+                return inChunk;
+            });
+        }
+        return persisted;
+    }
+}
@@ -0,0 +1,104 @@
+package legacyfighter.dietary.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.OptimisticLockException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Retries {@link RetryOnConflict} methods with exponential backoff and jitter. Runs outside the
+ * transaction interceptor, so every attempt gets its own transaction and sees committed state.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class ConflictRetryAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(ConflictRetryAspect.class);
+
+    private final int maxAttempts;
+    private final long backoffMillis;
+    private final long maxBackoffMillis;
+
+    private final AtomicLong conflicts = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final Map<String, LongAdder> conflictsByOperation = new ConcurrentHashMap<>();
+
+    public ConflictRetryAspect(@Value("${optimistic.retry.max-attempts:5}") int maxAttempts,
+                               @Value("${optimistic.retry.backoff-ms:10}") long backoffMillis,
+                               @Value("${optimistic.retry.max-backoff-ms:500}") long maxBackoffMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Need at least one attempt: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    @Around("@annotation(legacyfighter.dietary.config.RetryOnConflict)")
+    public Object retry(ProceedingJoinPoint call) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return call.proceed();
+        }
+        String operation = call.getSignature().toShortString();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.proceed();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                conflicts.incrementAndGet();
+                conflictsByOperation.computeIfAbsent(operation, key -> new LongAdder()).increment();
+                if (attempt == maxAttempts) {
+                    exhausted.incrementAndGet();
+                    log.warn("{} still conflicting after {} attempts", operation, attempt);
+                    throw e;
+                }
+                retries.incrementAndGet();
+                log.debug("{} conflicted on attempt {}, retrying", operation, attempt);
+                backOff(attempt, e);
+            }
+        }
+    }
+
+    private void backOff(int attempt, RuntimeException conflict) {
+        long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflict;
+        }
+    }
+
+    public long conflictCount() {
+        return conflicts.get();
+    }
+
+    public long retryCount() {
+        return retries.get();
+    }
+
+    public long exhaustedCount() {
+        return exhausted.get();
+    }
+
+    public Map<String, Long> conflictsByOperation() {
+        Map<String, Long> counts = new ConcurrentHashMap<>();
+        conflictsByOperation.forEach((operation, count) -> counts.put(operation, count.sum()));
+        return counts;
+    }
+}
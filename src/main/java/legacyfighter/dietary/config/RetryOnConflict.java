@@ -0,0 +1,15 @@
+package legacyfighter.dietary.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a transactional write method to be run again, in a fresh transaction, when it loses
+ * an optimistic locking race. Has no effect when called inside an already running transaction.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+}
@@ -0,0 +1,103 @@
+package legacyfighter.dietary.config;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Aggregated cost of service method invocations, per operation, and hit counts of application caches.
+ */
+@Component
+public class ServiceMetrics {
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final Map<String, CacheCounters> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Publishes the counters of a cache in the snapshot, under its name prefixed with "cache.".
+     */
+    public void registerCache(String name, LongSupplier hits, LongSupplier misses, IntSupplier size) {
+        caches.put("cache." + name, new CacheCounters(hits, misses, size));
+    }
+
+    void record(String operation, long statements, long entityLoads, long secondLevelCacheHits,
+                long durationNanos, boolean overBudget) {
+        operations.computeIfAbsent(operation, key -> new Operation())
+                .record(statements, entityLoads, secondLevelCacheHits, durationNanos, overBudget);
+    }
+
+    public Map<String, Map<String, Number>> snapshot() {
+        Map<String, Map<String, Number>> snapshot = new TreeMap<>();
+        operations.forEach((operation, metrics) -> snapshot.put(operation, metrics.snapshot()));
+        caches.forEach((cache, counters) -> snapshot.put(cache, counters.snapshot()));
+        return snapshot;
+    }
+
+    public long overBudgetCount(String operation) {
+        Operation metrics = operations.get(operation);
+        return metrics == null ? 0 : metrics.overBudget;
+    }
+
+    private static class Operation {
+        private long invocations;
+        private long statements;
+        private long maxStatements;
+        private long entityLoads;
+        private long secondLevelCacheHits;
+        private long durationNanos;
+        private long maxDurationNanos;
+        private long overBudget;
+
+        synchronized void record(long statements, long entityLoads, long secondLevelCacheHits,
+                                 long durationNanos, boolean overBudget) {
+            this.invocations++;
+            this.statements += statements;
+            this.maxStatements = Math.max(this.maxStatements, statements);
+            this.entityLoads += entityLoads;
+            this.secondLevelCacheHits += secondLevelCacheHits;
+            this.durationNanos += durationNanos;
+            this.maxDurationNanos = Math.max(this.maxDurationNanos, durationNanos);
+            if (overBudget) {
+                this.overBudget++;
+            }
+        }
+
+        synchronized Map<String, Number> snapshot() {
+            Map<String, Number> snapshot = new TreeMap<>();
+            snapshot.put("invocations", invocations);
+            snapshot.put("queries", statements);
+            snapshot.put("maxQueries", maxStatements);
+            snapshot.put("entityLoads", entityLoads);
+            snapshot.put("secondLevelCacheHits", secondLevelCacheHits);
+            snapshot.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(durationNanos));
+            snapshot.put("maxMillis", TimeUnit.NANOSECONDS.toMillis(maxDurationNanos));
+            snapshot.put("overBudget", overBudget);
+            return snapshot;
+        }
+    }
+
+    private static class CacheCounters {
+        private final LongSupplier hits;
+        private final LongSupplier misses;
+        private final IntSupplier size;
+
+        private CacheCounters(LongSupplier hits, LongSupplier misses, IntSupplier size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.size = size;
+        }
+
+        Map<String, Number> snapshot() {
+            Map<String, Number> snapshot = new TreeMap<>();
+            snapshot.put("hits", hits.getAsLong());
+            snapshot.put("misses", misses.getAsLong());
+            snapshot.put("size", size.getAsInt());
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package legacyfighter.dietary.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measures every public method of the order, tax rule and product services: SQL statements and
+ * entity loads of the calling thread, second level cache hits and duration including the commit.
+ * Second level cache hits come from the global Hibernate statistics, so under concurrent load
+ * they also include hits of other threads. Invocations running more statements than
+ * metrics.query-budget are logged as warnings and counted as over budget.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceMetricsAspect {
+
+    private static final Logger log = LoggerFactory.getLogger(ServiceMetricsAspect.class);
+
+    private final SqlInstrumentation sqlInstrumentation;
+    private final ServiceMetrics serviceMetrics;
+    private final ObjectProvider<EntityManagerFactory> entityManagerFactory;
+    private final long queryBudget;
+
+    public ServiceMetricsAspect(SqlInstrumentation sqlInstrumentation,
+                                ServiceMetrics serviceMetrics,
+                                ObjectProvider<EntityManagerFactory> entityManagerFactory,
+                                @Value("${metrics.query-budget:20}") long queryBudget) {
+        this.sqlInstrumentation = sqlInstrumentation;
+        this.serviceMetrics = serviceMetrics;
+        this.entityManagerFactory = entityManagerFactory;
+        this.queryBudget = queryBudget;
+    }
+
+    @Around("execution(public * legacyfighter.dietary.OrderService.*(..)) || " +
+            "execution(public * legacyfighter.dietary.TaxRuleService.*(..)) || " +
+            "execution(public * legacyfighter.dietary.newproducts.OldProductService.*(..))")
+    public Object measure(ProceedingJoinPoint call) throws Throwable {
+        String operation = operationOf((MethodSignature) call.getSignature());
+        Statistics statistics = statistics();
+        long statementsBefore = sqlInstrumentation.statementCount();
+        long loadsBefore = sqlInstrumentation.entityLoadCount();
+        long cacheHitsBefore = statistics.getSecondLevelCacheHitCount();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = call.proceed();
+            failed = false;
+            return result;
+        } finally {
+            long duration = System.nanoTime() - start;
+            long statements = sqlInstrumentation.statementCount() - statementsBefore;
+            long entityLoads = sqlInstrumentation.entityLoadCount() - loadsBefore;
+            long cacheHits = statistics.getSecondLevelCacheHitCount() - cacheHitsBefore;
+            boolean overBudget = statements > queryBudget;
+            serviceMetrics.record(operation, statements, entityLoads, cacheHits, duration, overBudget);
+            if (overBudget) {
+                log.warn("operation={} queries={} queryBudget={} entityLoads={} secondLevelCacheHits={} durationMs={} failed={}",
+                        operation, statements, queryBudget, entityLoads, cacheHits, TimeUnit.NANOSECONDS.toMillis(duration), failed);
+            } else if (log.isDebugEnabled()) {
+                log.debug("operation={} queries={} entityLoads={} secondLevelCacheHits={} durationMs={} failed={}",
+                        operation, statements, entityLoads, cacheHits, TimeUnit.NANOSECONDS.toMillis(duration), failed);
+            }
+        }
+    }
+
+    // overloads are told apart by their parameter types
+    private static String operationOf(MethodSignature signature) {
+        return Arrays.stream(signature.getParameterTypes())
+                .map(Class::getSimpleName)
+                .collect(Collectors.joining(",", signature.getDeclaringType().getSimpleName() + "." + signature.getName() + "(", ")"));
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.getObject().unwrap(SessionFactory.class).getStatistics();
+    }
+}
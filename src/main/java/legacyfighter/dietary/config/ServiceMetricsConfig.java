@@ -0,0 +1,24 @@
+package legacyfighter.dietary.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ServiceMetricsConfig {
+
+    @Bean
+    SqlInstrumentation sqlInstrumentation() {
+        return new SqlInstrumentation();
+    }
+
+    @Bean
+    HibernatePropertiesCustomizer sqlInstrumentationCustomizer(SqlInstrumentation sqlInstrumentation) {
+        return properties -> {
+            properties.put(AvailableSettings.STATEMENT_INSPECTOR, sqlInstrumentation);
+            properties.put(AvailableSettings.INTERCEPTOR, sqlInstrumentation);
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+}
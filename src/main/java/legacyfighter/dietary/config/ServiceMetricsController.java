@@ -0,0 +1,19 @@
+package legacyfighter.dietary.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+public class ServiceMetricsController {
+
+    @Autowired
+    private ServiceMetrics serviceMetrics;
+
+    @GetMapping("/metrics/services")
+    public Map<String, Map<String, Number>> serviceMetrics() {
+        return serviceMetrics.snapshot();
+    }
+}
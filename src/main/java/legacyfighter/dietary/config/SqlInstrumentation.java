@@ -0,0 +1,36 @@
+package legacyfighter.dietary.config;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+
+/**
+ * Counts SQL statements and entity loads of the current thread. Registered with Hibernate both
+ * as statement inspector and as session factory interceptor, see {@link ServiceMetricsConfig}.
+ */
+class SqlInstrumentation extends EmptyInterceptor implements StatementInspector {
+
+    private final ThreadLocal<long[]> counters = ThreadLocal.withInitial(() -> new long[2]);
+
+    @Override
+    public String inspect(String sql) {
+        counters.get()[0]++;
+        return sql;
+    }
+
+    @Override
+    public boolean onLoad(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+        counters.get()[1]++;
+        return false;
+    }
+
+    long statementCount() {
+        return counters.get()[0];
+    }
+
+    long entityLoadCount() {
+        return counters.get()[1];
+    }
+}
@@ -0,0 +1,26 @@
+package legacyfighter.dietary.newproducts;
+
+import java.util.List;
+import java.util.UUID;
+
+public class DescriptionPage {
+
+    private final List<String> descriptions;
+    private final UUID next;
+
+    DescriptionPage(List<String> descriptions, UUID next) {
+        this.descriptions = descriptions;
+        this.next = next;
+    }
+
+    public List<String> getDescriptions() {
+        return descriptions;
+    }
+
+    /**
+     * Serial number to pass as after for the following page, null on the last one.
+     */
+    public UUID getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,75 @@
+package legacyfighter.dietary.newproducts;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of formatted descriptions per product, safe for concurrent readers. Every entry
+ * carries the description it was formatted from, so an entry of a changed description is formatted
+ * again and needs no explicit invalidation. The row version is not used, as counter and price
+ * writes bump it without touching the description.
+ */
+@Component
+class FormattedDescriptionCache {
+
+    private final Cache<UUID, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    FormattedDescriptionCache(@Value("${products.descriptions.cache.size:100000}") int maxSize) {
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    String formatted(UUID serialNumber, String desc, String longDesc) {
+        Entry entry = entries.getIfPresent(serialNumber);
+        if (entry != null && entry.isFormattedFrom(desc, longDesc)) {
+            hits.increment();
+            return entry.formatted;
+        }
+        misses.increment();
+        String formatted = new Description(desc, longDesc).formatted();
+        entries.put(serialNumber, new Entry(desc, longDesc, formatted));
+        return formatted;
+    }
+
+    double hitRate() {
+        long hits = this.hits.sum();
+        long lookups = hits + misses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    long hitCount() {
+        return hits.sum();
+    }
+
+    long missCount() {
+        return misses.sum();
+    }
+
+    long size() {
+        return entries.estimatedSize();
+    }
+
+    private static class Entry {
+        private final String desc;
+        private final String longDesc;
+        private final String formatted;
+
+        private Entry(String desc, String longDesc, String formatted) {
+            this.desc = desc;
+            this.longDesc = longDesc;
+            this.formatted = formatted;
+        }
+
+        private boolean isFormattedFrom(String desc, String longDesc) {
+            return this.desc.equals(desc) && this.longDesc.equals(longDesc);
+        }
+    }
+}
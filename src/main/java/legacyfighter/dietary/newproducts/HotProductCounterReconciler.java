@@ -0,0 +1,35 @@
+package legacyfighter.dietary.newproducts;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Periodically writes counters of hot products back into their rows. Stops once the context
+ * starts closing, so no reconciliation runs against an already closed persistence unit.
+ */
+@Component
+class HotProductCounterReconciler {
+
+    @Autowired
+    OldProductService oldProductService;
+
+    @Autowired
+    HotProductCounters hotProductCounters;
+
+    private volatile boolean closing;
+
+    @Scheduled(fixedDelayString = "${products.hot.reconcile-interval-ms:1000}")
+    void reconcile() {
+        if (!closing && hotProductCounters.any()) {
+            oldProductService.reconcileHotCounters();
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    void contextClosing() {
+        closing = true;
+    }
+}
@@ -0,0 +1,159 @@
+package legacyfighter.dietary.newproducts;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory counters of products marked as hot. While a product is hot its
+ * counter lives here and is only periodically reconciled into {@link Counter}.
+ * Assumes a single application instance writes counters of hot products.
+ * <p>
+ * Writes to the row of a product that is not hot hold a routing lock of the product until their
+ * transaction completes; marking the product hot or cold takes that lock exclusively, so the
+ * counter is seeded from, and written back into, a row no one else is changing.
+ */
+@Component
+class HotProductCounters {
+
+    static final int ROUTING_LOCK_STRIPES = 64;
+
+    private final Map<UUID, StripedCounter> counters = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock[] routingLocks = new ReentrantReadWriteLock[ROUTING_LOCK_STRIPES];
+    private final int stripes;
+
+    HotProductCounters(@Value("${products.hot.stripes:16}") int stripes) {
+        this.stripes = stripes;
+        for (int i = 0; i < routingLocks.length; i++) {
+            routingLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Applies the change to the hot counter of the product or, when it is not hot, to its row.
+     */
+    <T> T route(UUID serialNumber, Function<StripedCounter, T> onCounter, Supplier<T> onRow) {
+        StripedCounter counter = counters.get(serialNumber);
+        if (counter != null) {
+            return onCounter.apply(counter);
+        }
+        Lock lock = routingLockOf(serialNumber).readLock();
+        lock.lock();
+        boolean heldUntilCompletion = false;
+        try {
+            counter = counters.get(serialNumber);
+            if (counter != null) {
+                return onCounter.apply(counter);
+            }
+            T result = onRow.get();
+            heldUntilCompletion = unlockAfterCompletion(lock, null);
+            return result;
+        } finally {
+            if (!heldUntilCompletion) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the row only once no row write of the product is in flight, and publishes the counter
+     * before any new one can start.
+     */
+    void markHot(UUID serialNumber, Supplier<OldProduct> currentRow) {
+        Lock lock = exclusiveRoutingLockOf(serialNumber);
+        try {
+            if (!counters.containsKey(serialNumber)) {
+                OldProduct product = currentRow.get();
+                counters.put(serialNumber, new StripedCounter(stripes, product.getCounter(), product.hasNonZeroPrice()));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the counter, so new changes go to the row once the surrounding transaction completes.
+     * Until then row writes wait, so if the transaction rolls back the counter is put back unchanged
+     * and a retried write-back still finds it.
+     */
+    Optional<StripedCounter> remove(UUID serialNumber) {
+        Lock lock = exclusiveRoutingLockOf(serialNumber);
+        StripedCounter removed = counters.remove(serialNumber);
+        if (!unlockAfterCompletion(lock, removed == null ? null : () -> counters.putIfAbsent(serialNumber, removed))) {
+            lock.unlock();
+        }
+        return Optional.ofNullable(removed);
+    }
+
+    /**
+     * Runs the action once the surrounding transaction commits, or at once outside of a transaction.
+     */
+    void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    Optional<StripedCounter> of(UUID serialNumber) {
+        return Optional.ofNullable(counters.get(serialNumber));
+    }
+
+    boolean any() {
+        return !counters.isEmpty();
+    }
+
+    Set<Map.Entry<UUID, StripedCounter>> all() {
+        return counters.entrySet();
+    }
+
+    private Lock exclusiveRoutingLockOf(UUID serialNumber) {
+        ReentrantReadWriteLock routingLock = routingLockOf(serialNumber);
+        if (routingLock.getReadHoldCount() > 0) {
+            throw new IllegalStateException("Cannot switch counting of " + serialNumber + " in a transaction that wrote product rows");
+        }
+        Lock lock = routingLock.writeLock();
+        lock.lock();
+        return lock;
+    }
+
+    private boolean unlockAfterCompletion(Lock lock, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                try {
+                    if (status != STATUS_COMMITTED && onRollback != null) {
+                        onRollback.run();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        });
+        return true;
+    }
+
+    private ReentrantReadWriteLock routingLockOf(UUID serialNumber) {
+        return routingLocks[Math.floorMod(serialNumber.hashCode(), routingLocks.length)];
+    }
+}
@@ -4,6 +4,7 @@ import javax.persistence.Embeddable;
 import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.Version;
 import java.math.BigDecimal;
 import java.util.UUID;
 
@@ -13,6 +14,9 @@ public class OldProduct {
     @Id
     private UUID serialNumber = UUID.randomUUID();
 
+    @Version
+    private Long version;
+
     @Embedded
     private Price price;
 
@@ -46,10 +50,16 @@ public class OldProduct {
         }
     }
 
-    void changePriceTo(BigDecimal price) {
+    void reconcileCounterTo(int counter) {
+        this.counter = new Counter(counter);
+    }
+
+    boolean changePriceTo(BigDecimal price) {
         if (counter.hasAny()) {
             this.price = Price.of(price);
+            return true;
         }
+        return false;
     }
 
     @Deprecated
@@ -68,10 +78,22 @@ public class OldProduct {
         return price.getAsBigDecimal();
     }
 
+    boolean hasNonZeroPrice() {
+        return price.isNotZero();
+    }
+
     int getCounter() {
         return counter.getIntValue();
     }
 
+    String getDesc() {
+        return desc.getDesc();
+    }
+
+    String getLongDesc() {
+        return desc.getLongDesc();
+    }
+
     public UUID serialNumber() {
         return serialNumber;
     }
@@ -126,6 +148,14 @@ class Description {
         this.longDesc = longDesc;
     }
 
+    String getDesc() {
+        return desc;
+    }
+
+    String getLongDesc() {
+        return longDesc;
+    }
+
     String formatted() {
         if (desc.isEmpty() || longDesc.isEmpty()) {
             return "";
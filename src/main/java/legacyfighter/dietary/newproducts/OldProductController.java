@@ -0,0 +1,70 @@
+package legacyfighter.dietary.newproducts;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.UUID;
+
+@RestController
+public class OldProductController {
+
+    private static final int FLUSH_EVERY = 1000;
+
+    @Autowired
+    private OldProductService oldProductService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FormattedDescriptionCache formattedDescriptionCache;
+
+    @GetMapping("/products/descriptions")
+    public DescriptionPage descriptions(@RequestParam(required = false) UUID after,
+                                        @RequestParam(defaultValue = "100") int size) {
+        return oldProductService.findDescriptions(after, size);
+    }
+
+    @GetMapping("/products/descriptions/cache")
+    public Map<String, Number> descriptionCacheStats() {
+        return Map.of(
+                "hitRate", formattedDescriptionCache.hitRate(),
+                "hits", formattedDescriptionCache.hitCount(),
+                "misses", formattedDescriptionCache.missCount(),
+                "size", formattedDescriptionCache.size());
+    }
+
+    @GetMapping("/products/descriptions/stream")
+    public ResponseEntity<StreamingResponseBody> streamDescriptions() {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator json = objectMapper.getFactory().createGenerator(outputStream)) {
+                json.writeStartArray();
+                int[] written = {0};
+                oldProductService.streamAllDescriptions(description -> {
+                    try {
+                        json.writeString(description);
+                        if (++written[0] % FLUSH_EVERY == 0) {
+                            json.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                json.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
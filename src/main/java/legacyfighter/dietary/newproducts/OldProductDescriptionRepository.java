@@ -1,5 +1,6 @@
 package legacyfighter.dietary.newproducts;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,17 +11,32 @@ import java.util.stream.Collectors;
 public class OldProductDescriptionRepository {
 
     private final OldProductRepository oldProductRepository;
+    private final FormattedDescriptionCache formattedDescriptionCache;
 
-    public OldProductDescriptionRepository(OldProductRepository oldProductRepository) {
+    public OldProductDescriptionRepository(OldProductRepository oldProductRepository,
+                                           FormattedDescriptionCache formattedDescriptionCache) {
         this.oldProductRepository = oldProductRepository;
+        this.formattedDescriptionCache = formattedDescriptionCache;
     }
 
-    List<OldProductDescription> findAll() {
-        return oldProductRepository
-                .findAll()
+    /**
+     * Formatted descriptions of the products with serial number greater than after (null for the first page).
+     * Only the description columns are read, no OldProduct is loaded, and unchanged descriptions are not formatted again.
+     */
+    DescriptionPage findPage(UUID after, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive");
+        }
+        PageRequest page = PageRequest.of(0, pageSize);
+        List<Object[]> rows = after == null
+                ? oldProductRepository.findFirstDescriptions(page)
+                : oldProductRepository.findDescriptionsAfter(after, page);
+        List<String> descriptions = rows
                 .stream()
-                .map(OldProductDescription::new)
+                .map(row -> formattedDescriptionCache.formatted((UUID) row[0], (String) row[1], (String) row[2]))
                 .collect(Collectors.toList());
+        UUID next = rows.size() < pageSize ? null : (UUID) rows.get(rows.size() - 1)[0];
+        return new DescriptionPage(descriptions, next);
     }
 
     OldProductDescription getOne(UUID productId) {
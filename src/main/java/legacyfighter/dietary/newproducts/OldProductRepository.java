@@ -1,9 +1,60 @@
 package legacyfighter.dietary.newproducts;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
 
 public interface OldProductRepository extends JpaRepository<OldProduct, UUID> {
 
+    // descriptions are read as (serialNumber, desc, longDesc) rows, keyset-paged by serial number
+
+    @Query("select p.serialNumber, p.desc.desc, p.desc.longDesc from OldProduct p order by p.serialNumber")
+    List<Object[]> findFirstDescriptions(Pageable page);
+
+    @Query("select p.serialNumber, p.desc.desc, p.desc.longDesc from OldProduct p " +
+            "where p.serialNumber > :after order by p.serialNumber")
+    List<Object[]> findDescriptionsAfter(@Param("after") UUID serialNumber, Pageable page);
+
+    // the where clauses mirror the rules of OldProduct, each update reports whether it applied
+    // and bumps the version, so that concurrent entity based writes of the same row conflict
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OldProduct p set p.counter.counter = p.counter.counter + 1, p.version = p.version + 1 " +
+            "where p.serialNumber = :serialNumber and p.price.price <> 0")
+    int incrementCounter(@Param("serialNumber") UUID serialNumber);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OldProduct p set p.counter.counter = p.counter.counter - 1, p.version = p.version + 1 " +
+            "where p.serialNumber = :serialNumber and p.price.price <> 0 and p.counter.counter > 0")
+    int decrementCounter(@Param("serialNumber") UUID serialNumber);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OldProduct p set p.price.price = :price, p.version = p.version + 1 " +
+            "where p.serialNumber = :serialNumber and p.counter.counter > 0")
+    int changePrice(@Param("serialNumber") UUID serialNumber, @Param("price") BigDecimal price);
+
+    // replace is not part of JPQL, it is passed through to the database as a function call
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OldProduct p set p.version = p.version + 1, " +
+            "p.desc.desc = function('replace', p.desc.desc, :oldChar, :newChar), " +
+            "p.desc.longDesc = function('replace', p.desc.longDesc, :oldChar, :newChar) " +
+            "where locate(:oldChar, p.desc.desc, 1) > 0 or locate(:oldChar, p.desc.longDesc, 1) > 0")
+    int replaceInDescriptions(@Param("oldChar") String oldChar, @Param("newChar") String newChar);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update OldProduct p set p.version = p.version + 1, " +
+            "p.desc.desc = function('replace', p.desc.desc, :oldChar, :newChar), " +
+            "p.desc.longDesc = function('replace', p.desc.longDesc, :oldChar, :newChar) " +
+            "where p.serialNumber in :serialNumbers " +
+            "and (locate(:oldChar, p.desc.desc, 1) > 0 or locate(:oldChar, p.desc.longDesc, 1) > 0)")
+    int replaceInDescriptions(@Param("serialNumbers") Collection<UUID> serialNumbers,
+                              @Param("oldChar") String oldChar, @Param("newChar") String newChar);
 }
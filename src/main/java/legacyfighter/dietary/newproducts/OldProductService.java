@@ -1,14 +1,18 @@
 
 package legacyfighter.dietary.newproducts;
 
+import legacyfighter.dietary.config.RetryOnConflict;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 @Service
 public class OldProductService {
@@ -19,42 +23,118 @@ public class OldProductService {
     @Autowired
     OldProductDescriptionRepository oldProductDescriptionRepository;
 
+    @Autowired
+    HotProductCounters hotProductCounters;
+
+    @Value("${products.descriptions.page-size:1000}")
+    int descriptionsPageSize;
+
     public List<String> findAllDescriptions() {
-        return
-                oldProductDescriptionRepository
-                .findAll()
-                .stream()
-                .map(OldProductDescription::formatDesc)
-                .collect(Collectors.toList());
+        List<String> descriptions = new ArrayList<>();
+        streamAllDescriptions(descriptions::add);
+        return descriptions;
+    }
+
+    public DescriptionPage findDescriptions(UUID after, int pageSize) {
+        return oldProductDescriptionRepository.findPage(after, pageSize);
+    }
+
+    /**
+     * Walks the whole catalog page by page, so at most one page of descriptions is held in memory.
+     */
+    public void streamAllDescriptions(Consumer<String> consumer) {
+        UUID after = null;
+        do {
+            DescriptionPage page = oldProductDescriptionRepository.findPage(after, descriptionsPageSize);
+            page.getDescriptions().forEach(consumer);
+            after = page.getNext();
+        } while (after != null);
     }
 
     @Transactional
+    @RetryOnConflict
     public void replaceCharInDesc(UUID productId, char oldChar, char newChar) {
         OldProductDescription product = oldProductDescriptionRepository.getOne(productId);
         product.replaceCharFromDesc(oldChar, newChar);
     }
 
+    /**
+     * Replaces the character in descriptions of the whole catalog with a single update,
+     * touching only rows that contain it. Returns the number of rows changed.
+     */
+    @Transactional
+    @RetryOnConflict
+    public int replaceCharInDescs(char oldChar, char newChar) {
+        if (oldChar == newChar) {
+            return 0;
+        }
+        return oldProductRepository.replaceInDescriptions(String.valueOf(oldChar), String.valueOf(newChar));
+    }
+
+    @Transactional
+    @RetryOnConflict
+    public int replaceCharInDescs(Collection<UUID> productIds, char oldChar, char newChar) {
+        if (oldChar == newChar || productIds.isEmpty()) {
+            return 0;
+        }
+        return oldProductRepository.replaceInDescriptions(productIds, String.valueOf(oldChar), String.valueOf(newChar));
+    }
+
     @Transactional
-    public void incrementCounter(UUID productId) {
-        OldProduct product = oldProductRepository.getOne(productId);
-        product.incrementCounter();
+    @RetryOnConflict
+    public boolean incrementCounter(UUID productId) {
+        return hotProductCounters.route(productId,
+                StripedCounter::increment,
+                () -> oldProductRepository.incrementCounter(productId) == 1);
     }
 
     @Transactional
-    public void decrementCounter(UUID productId) {
-        OldProduct product = oldProductRepository.getOne(productId);
-        product.decrementCounter();
+    @RetryOnConflict
+    public boolean decrementCounter(UUID productId) {
+        return hotProductCounters.route(productId,
+                StripedCounter::decrement,
+                () -> oldProductRepository.decrementCounter(productId) == 1);
     }
 
     @Transactional
-    public void changePriceOf(UUID productId, BigDecimal newPrice) {
-        OldProduct product = oldProductRepository.getOne(productId);
-        product.changePriceTo(newPrice);
+    @RetryOnConflict
+    public boolean changePriceOf(UUID productId, BigDecimal newPrice) {
+        Price price = Price.of(newPrice);
+        return hotProductCounters.route(productId, hot -> {
+            OldProduct product = oldProductRepository.getOne(productId);
+            product.reconcileCounterTo(hot.sum());
+            boolean changed = product.changePriceTo(newPrice);
+            boolean priceIsNotZero = product.hasNonZeroPrice();
+            hotProductCounters.afterCommit(() -> hot.priceChanged(priceIsNotZero));
+            return changed;
+        }, () -> oldProductRepository.changePrice(productId, price.getAsBigDecimal()) == 1);
     }
 
     @Transactional
     public int getCounterOf(UUID serialNumber) {
-        return oldProductRepository.getOne(serialNumber).getCounter();
+        return hotProductCounters.of(serialNumber)
+                .map(StripedCounter::sum)
+                .orElseGet(() -> oldProductRepository.getOne(serialNumber).getCounter());
+    }
+
+    @Transactional
+    public void markHot(UUID serialNumber) {
+        hotProductCounters.markHot(serialNumber, () -> oldProductRepository.getOne(serialNumber));
+    }
+
+    @Transactional
+    @RetryOnConflict
+    public void markCold(UUID serialNumber) {
+        hotProductCounters.remove(serialNumber)
+                .ifPresent(counter -> oldProductRepository.getOne(serialNumber).reconcileCounterTo(counter.sum()));
+    }
+
+    @Transactional
+    @RetryOnConflict
+    public void reconcileHotCounters() {
+        hotProductCounters.all().forEach(hot ->
+                oldProductRepository.findById(hot.getKey())
+                        .ifPresent(product -> product.reconcileCounterTo(hot.getValue().sum())));
     }
 
     @Transactional
@@ -0,0 +1,82 @@
+package legacyfighter.dietary.newproducts;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Stock of a hot product split into cells, so that concurrent increments and
+ * decrements mostly touch different cells instead of the same row.
+ * Every cell stays non-negative, hence the sum does too.
+ */
+class StripedCounter {
+
+    // one cell per cache line, to keep neighbouring cells from false sharing
+    private static final int PADDING = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripes;
+    private volatile boolean priceIsNotZero;
+
+    StripedCounter(int stripes, int initialValue, boolean priceIsNotZero) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Need at least one stripe: " + stripes);
+        }
+        if (initialValue < 0) {
+            throw new IllegalStateException("Cannot have negative counter: " + initialValue);
+        }
+        this.stripes = stripes;
+        this.cells = new AtomicLongArray(stripes * PADDING);
+        this.cells.set(0, initialValue);
+        this.priceIsNotZero = priceIsNotZero;
+    }
+
+    boolean increment() {
+        if (!priceIsNotZero) {
+            return false;
+        }
+        cells.incrementAndGet(home() * PADDING);
+        return true;
+    }
+
+    boolean decrement() {
+        if (!priceIsNotZero) {
+            return false;
+        }
+        // an increment may land in a cell already visited, so rescan until the stock is really gone
+        do {
+            if (tryDecrementAnyCell()) {
+                return true;
+            }
+        } while (sum() > 0);
+        return false;
+    }
+
+    private boolean tryDecrementAnyCell() {
+        int home = home();
+        for (int i = 0; i < stripes; i++) {
+            int index = ((home + i) % stripes) * PADDING;
+            long value;
+            while ((value = cells.get(index)) > 0) {
+                if (cells.compareAndSet(index, value, value - 1)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    int sum() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return Math.toIntExact(sum);
+    }
+
+    void priceChanged(boolean priceIsNotZero) {
+        this.priceIsNotZero = priceIsNotZero;
+    }
+
+    private int home() {
+        return (int) (Thread.currentThread().getId() % stripes);
+    }
+}
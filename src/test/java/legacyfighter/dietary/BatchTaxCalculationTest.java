@@ -0,0 +1,236 @@
+package legacyfighter.dietary;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Year;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@Transactional
+@Sql(scripts = {"/scripts/testdb.sql"})
+class BatchTaxCalculationTest {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private TaxRuleService taxRuleService;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	@BeforeEach
+	void setup() {
+		TaxRule linear = taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(2, 3, "linear", Year.of(1989))).getTaxRules().get(0);
+		TaxRule square = taxRuleService.createTaxConfigWithRule("en", TaxRule.squareRule(1, 1, 1, "square", Year.of(1989))).getTaxRules().get(0);
+
+		orderRepository.getOne(6L).getTaxRules().add(linear);
+		orderRepository.getOne(7L).getTaxRules().add(linear);
+		orderRepository.getOne(8L).getTaxRules().addAll(List.of(linear, square));
+	}
+
+	@Test
+	void calculatesTaxForManyOrders() {
+		//when
+		Map<Long, BigDecimal> taxes = orderService.calculateTaxForOrders(List.of(1L, 6L, 7L, 8L, 6L, 999L));
+
+		//then
+		assertEquals(4, taxes.size());
+		assertEquals(BigDecimal.ZERO, taxes.get(1L));
+		assertEquals(new BigDecimal(3), taxes.get(6L));
+		assertEquals(new BigDecimal(3), taxes.get(7L));
+		assertEquals(new BigDecimal(13), taxes.get(8L));
+	}
+
+	@Test
+	void batchTaxIsTheSameAsSingleOrderTax() {
+		//when
+		Map<Long, BigDecimal> taxes = orderService.calculateTaxForOrders(Order.OrderState.Paid);
+
+		//then
+		assertEquals(7, taxes.size());
+		taxes.forEach((orderId, tax) -> assertEquals(orderService.calculateTaxForOrder(orderId), tax));
+	}
+
+	@Test
+	void orderTotalIsTheTaxBase() {
+		//given
+		lineOf(6L, "2.50", 2);
+		lineOf(6L, "1.00", 3);
+		lineOf(8L, "1", 1);
+
+		//when
+		Map<Long, BigDecimal> taxes = orderService.calculateTaxForOrders(List.of(6L, 8L));
+
+		//then
+		assertEquals(0, new BigDecimal("8.00").compareTo(orderRepository.getOne(6L).getTotal()));
+		assertEquals(0, new BigDecimal("19").compareTo(taxes.get(6L)));
+		assertEquals(0, new BigDecimal("31").compareTo(taxes.get(8L)));
+		assertEquals(taxes.get(6L), orderService.calculateTaxForOrder(6L));
+	}
+
+	@Test
+	void cachedTotalIsDroppedWhenItemsChange() {
+		//given
+		OrderLine line = lineOf(7L, "3", 1);
+		assertEquals(0, new BigDecimal("9").compareTo(orderService.calculateTaxForOrder(7L)));
+
+		//when
+		line.setQuantity(2);
+
+		//then
+		assertEquals(0, new BigDecimal("15").compareTo(orderService.calculateTaxForOrder(7L)));
+		assertEquals(0, new BigDecimal("6").compareTo(orderRepository.getOne(7L).getTotal()));
+	}
+
+	@Test
+	void itemsAreChangedOnlyThroughTheOrder() {
+		//given
+		Order order = orderRepository.getOne(7L);
+		OrderLine line = new OrderLine();
+		line.setPrice(new BigDecimal("3"));
+		line.setQuantity(1);
+
+		//when
+		order.addItem(line);
+		entityManager.flush();
+
+		//then
+		assertEquals(0, new BigDecimal("9").compareTo(orderService.calculateTaxForOrder(7L)));
+		assertThrows(UnsupportedOperationException.class, () -> order.getItems().add(new OrderLine()));
+
+		//when
+		order.removeItem(line);
+		entityManager.flush();
+
+		//then
+		assertEquals(0, BigDecimal.ZERO.compareTo(order.getTotal()));
+		assertEquals(0, new BigDecimal("3").compareTo(orderService.calculateTaxForOrder(7L)));
+		assertEquals(0, (long) orderRepository.sumLineValuesOf(List.of(7L)).size());
+	}
+
+	@Test
+	void cachedTotalIsDroppedWhenLineIsDeleted() {
+		//given
+		OrderLine line = lineOf(7L, "3", 1);
+		assertEquals(0, new BigDecimal("9").compareTo(orderService.calculateTaxForOrder(7L)));
+
+		//when
+		entityManager.remove(line);
+		entityManager.flush();
+
+		//then
+		assertEquals(0, new BigDecimal("3").compareTo(orderService.calculateTaxForOrder(7L)));
+	}
+
+	@Test
+	void readingTaxDoesNotChangeTheOrder() {
+		//given
+		lineOf(7L, "3", 1);
+		entityManager.flush();
+		entityManager.clear();
+		Long version = versionOf(7L);
+
+		//when
+		BigDecimal tax = orderService.calculateTaxForOrder(7L);
+		BigDecimal total = orderRepository.getOne(7L).getTotal();
+		entityManager.flush();
+
+		//then
+		assertEquals(0, new BigDecimal("9").compareTo(tax));
+		assertEquals(0, new BigDecimal("3").compareTo(total));
+		assertEquals(version, versionOf(7L));
+		assertFalse(orderRepository.getOne(7L).isTotalKnown());
+	}
+
+	@Test
+	void totalIsStoredWhenItemsChangeThroughTheOrder() {
+		//given
+		Order order = orderRepository.getOne(7L);
+		OrderLine line = new OrderLine();
+		line.setPrice(new BigDecimal("2"));
+		line.setQuantity(2);
+
+		//when
+		order.addItem(line);
+
+		//then
+		assertTrue(order.isTotalKnown());
+		assertEquals(0, new BigDecimal("4").compareTo(order.getTotal()));
+		assertEquals(0, new BigDecimal("11").compareTo(orderService.calculateTaxForOrder(7L)));
+	}
+
+	@Test
+	void batchLeavesCallersPersistenceContextAlone() {
+		//given
+		Order order = orderRepository.getOne(6L);
+		order.setOrderState(Order.OrderState.Returned);
+
+		//when
+		orderService.calculateTaxForOrders(List.of(6L, 7L, 8L));
+
+		//then
+		assertTrue(entityManager.contains(order));
+		assertEquals(Order.OrderState.Returned, order.getOrderState());
+	}
+
+	@Test
+	void rulesAreAppliedInTheOrderOfTheChainByBothPaths() {
+		//given order 7 applies square before linear, order 8 linear before square
+		List<TaxRule> rulesOf7 = orderRepository.getOne(7L).getTaxRules();
+		rulesOf7.add(0, orderRepository.getOne(8L).getTaxRules().get(1));
+		entityManager.flush();
+		entityManager.clear();
+
+		//when
+		Map<Long, BigDecimal> taxes = orderService.calculateTaxForOrders(List.of(7L, 8L));
+
+		//then
+		assertEquals(0, new BigDecimal(5).compareTo(taxes.get(7L)));
+		assertEquals(0, new BigDecimal(13).compareTo(taxes.get(8L)));
+		assertEquals(0, taxes.get(7L).compareTo(orderService.calculateTaxForOrder(7L)));
+		assertEquals(0, taxes.get(8L).compareTo(orderService.calculateTaxForOrder(8L)));
+	}
+
+	@Test
+	void calculatesTaxForOrdersInState() {
+		//expect
+		assertEquals(Map.of(1L, BigDecimal.ZERO), orderService.calculateTaxForOrders(Order.OrderState.Initial));
+	}
+
+	private Long versionOf(Long orderId) {
+		return entityManager.createQuery("select o.version from Order o where o.id = :id", Long.class)
+				.setParameter("id", orderId)
+				.getSingleResult();
+	}
+
+	private OrderLine lineOf(Long orderId, String price, int quantity) {
+		OrderLine line = new OrderLine();
+		line.setOrder(orderRepository.getOne(orderId));
+		line.setPrice(new BigDecimal(price));
+		line.setQuantity(quantity);
+		entityManager.persist(line);
+		return line;
+	}
+
+}
@@ -0,0 +1,94 @@
+package legacyfighter.dietary;
+
+import legacyfighter.dietary.config.BulkWriter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(properties = "bulk.chunk-size=300")
+class BulkWriteIntegrationTest {
+
+    @Autowired
+    BulkWriter bulkWriter;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    TransactionTemplate transactionTemplate;
+
+    @Test
+    void ordersWithLinesAreInsertedInBatches() {
+        //given 100 orders with 10 lines each
+        List<Object> entities = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Order order = new Order();
+            order.setOrderState(Order.OrderState.Initial);
+            order.setOrderType(Order.OrderType.Regular_Batch);
+            entities.add(order);
+            for (int l = 0; l < 10; l++) {
+                OrderLine line = new OrderLine();
+                line.setOrder(order);
+                line.setPrice(BigDecimal.TEN);
+                line.setQuantity(l + 1);
+                entities.add(line);
+            }
+        }
+        long linesBefore = countOf("OrderLine");
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        //when
+        long persisted = bulkWriter.persistAll(entities.iterator());
+
+        //then
+        assertEquals(1100, persisted);
+        //orders split from their lines by a chunk boundary get their tax rows as well
+        assertEquals(100, statistics.getEntityStatistics(Order.class.getName()).getInsertCount());
+        assertEquals(1000, statistics.getEntityStatistics(OrderLine.class.getName()).getInsertCount());
+        assertEquals(linesBefore + 1000, countOf("OrderLine"));
+        //batched inserts plus one sequence call per 50 ids, instead of two statements per entity
+        assertTrue(statistics.getPrepareStatementCount() < 100, "statements: " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void chunksStayWrittenWhenCallersTransactionRollsBack() {
+        //given
+        List<Object> entities = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Order order = new Order();
+            order.setOrderState(Order.OrderState.Initial);
+            order.setOrderType(Order.OrderType.Regular_Batch);
+            entities.add(order);
+        }
+        long ordersBefore = countOf("Order");
+
+        //when
+        transactionTemplate.executeWithoutResult(status -> {
+            bulkWriter.persistAll(entities.iterator());
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertEquals(ordersBefore + 500, countOf("Order"));
+    }
+
+    private long countOf(String entity) {
+        return entityManager.createQuery("select count(e) from " + entity + " e", Long.class).getSingleResult();
+    }
+}
@@ -0,0 +1,24 @@
+package legacyfighter.dietary;
+
+import org.springframework.test.context.TestContext;
+import org.springframework.test.context.jdbc.SqlScriptsTestExecutionListener;
+import org.springframework.test.context.support.AbstractTestExecutionListener;
+
+/**
+ * Test scripts like testdb.sql rewrite the customer tables with plain JDBC, behind the second-level cache.
+ * Runs right after the scripts and evicts cached customers and groups, so no test sees another one's data.
+ */
+public class CustomerCacheResetListener extends AbstractTestExecutionListener {
+
+    @Override
+    public int getOrder() {
+        return new SqlScriptsTestExecutionListener().getOrder() + 1;
+    }
+
+    @Override
+    public void beforeTestMethod(TestContext testContext) {
+        testContext.getApplicationContext()
+                .getBeanProvider(CustomerService.class)
+                .ifAvailable(CustomerService::evictCustomerCaches);
+    }
+}
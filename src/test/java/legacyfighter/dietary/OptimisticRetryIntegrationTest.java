@@ -0,0 +1,121 @@
+package legacyfighter.dietary;
+
+import legacyfighter.dietary.config.ConflictRetryAspect;
+import legacyfighter.dietary.config.RetryOnConflict;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class OptimisticRetryIntegrationTest {
+
+    @Autowired
+    TaxRuleService taxRuleService;
+
+    @Autowired
+    ConflictRetryAspect conflictRetryAspect;
+
+    @Test
+    void concurrentlyAddedRulesNeverExceedMaxCount() throws Exception {
+        //given config with room for two more rules
+        taxRuleService.createTaxConfigWithRule("optimistic-country", 3, TaxRule.linearRule(1, 1, "first", Year.of(2020)));
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> adds = new ArrayList<>();
+
+        //when six rules are added at once
+        for (int i = 0; i < 6; i++) {
+            int factor = i;
+            adds.add(executor.submit(() -> {
+                start.await();
+                taxRuleService.addTaxRuleToCountry("optimistic-country", factor, 1, 1, "code-" + factor);
+                return null;
+            }));
+        }
+        start.countDown();
+        int added = 0;
+        int rejected = 0;
+        for (Future<?> add : adds) {
+            try {
+                add.get(30, TimeUnit.SECONDS);
+                added++;
+            } catch (ExecutionException e) {
+                assertEquals(IllegalStateException.class, e.getCause().getClass(), e.getCause().toString());
+                rejected++;
+            }
+        }
+        executor.shutdown();
+
+        //then
+        assertEquals(2, added);
+        assertEquals(4, rejected);
+        assertEquals(3, taxRuleService.findRules("optimistic-country").size());
+    }
+
+    @Test
+    void conflictingWriteIsRetriedInFreshAttempts() {
+        //given
+        long conflicts = conflictRetryAspect.conflictCount();
+        long retries = conflictRetryAspect.retryCount();
+        ConflictingWrite write = proxied(new ConflictingWrite(2));
+
+        //when
+        String result = write.write();
+
+        //then
+        assertEquals("written", result);
+        assertEquals(3, write.attempts());
+        assertEquals(conflicts + 2, conflictRetryAspect.conflictCount());
+        assertEquals(retries + 2, conflictRetryAspect.retryCount());
+        assertTrue(conflictRetryAspect.conflictsByOperation().containsKey("ConflictingWrite.write()"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        //given
+        long exhausted = conflictRetryAspect.exhaustedCount();
+        ConflictingWrite write = proxied(new ConflictingWrite(Integer.MAX_VALUE));
+
+        //expect
+        assertThrows(ObjectOptimisticLockingFailureException.class, write::write);
+        assertEquals(5, write.attempts());
+        assertEquals(exhausted + 1, conflictRetryAspect.exhaustedCount());
+    }
+
+    ConflictingWrite proxied(ConflictingWrite target) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(conflictRetryAspect);
+        return factory.getProxy();
+    }
+
+    static class ConflictingWrite {
+        private final int conflicts;
+        private int attempts;
+
+        ConflictingWrite(int conflicts) {
+            this.conflicts = conflicts;
+        }
+
+        @RetryOnConflict
+        public String write() {
+            if (attempts++ < conflicts) {
+                throw new ObjectOptimisticLockingFailureException(TaxConfig.class, 1L);
+            }
+            return "written";
+        }
+
+        public int attempts() {
+            return attempts;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package legacyfighter.dietary;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest(properties = {"orders.import.chunk-size=2", "orders.import.queue-capacity=1"})
+@Sql(scripts = {"/scripts/testdb.sql"})
+class OrderImportTest {
+
+	@Autowired
+	private OrderImportService orderImportService;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private OrderImportCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private OrderController orderController;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	private Long product;
+
+	@BeforeEach
+	void setUp() {
+		product = productRepository.save(new Product()).getId();
+	}
+
+	@Test
+	void csvRowsWithTheSameExternalIdFormOneOrder() {
+		//given
+		String csv = OrderImportReader.CSV_HEADER + "\n" +
+				"A-1,7,Phone,Initial," + product + ",2,10.00\n" +
+				"A-1,7,Phone,Initial," + product + ",1,5.50\n" +
+				"A-2,10,Wire,Paid," + product + ",3,1.00\n";
+		long ordersBefore = countOf("Order");
+
+		//when
+		OrderImportReport report = orderImportService.importOrders(newImportId(), new StringReader(csv), OrderImportFormat.CSV);
+
+		//then
+		assertEquals(2, report.getImportedOrders());
+		assertEquals(0, report.getRejectedOrders());
+		assertEquals(ordersBefore + 2, countOf("Order"));
+		assertEquals(3, countOf("OrderLine"));
+	}
+
+	@Test
+	void malformedCsvRowRejectsAllRowsOfItsOrder() {
+		//given
+		String csv = OrderImportReader.CSV_HEADER + "\n" +
+				"D-1,7,Phone,Initial," + product + ",2,10.00\n" +
+				"D-1,7,Phone,Initial," + product + ",two,10.00\n" +
+				"D-1,7,Phone,Initial," + product + ",1,5.50\n" +
+				"D-2,10,Wire,Paid," + product + ",3,1.00\n";
+		long ordersBefore = countOf("Order");
+
+		//when
+		OrderImportReport report = orderImportService.importOrders(newImportId(), new StringReader(csv), OrderImportFormat.CSV);
+
+		//then
+		assertEquals(1, report.getImportedOrders());
+		assertEquals(1, report.getRejectedOrders());
+		assertEquals(1L, report.getRejections().get(0).getRecord());
+		assertEquals("not a number: For input string: \"two\"", report.getRejections().get(0).getReason());
+		assertEquals(ordersBefore + 1, countOf("Order"));
+	}
+
+	@Test
+	void errorInReaderFailsTheImportInsteadOfHangingIt() {
+		//given
+		Reader failing = new StringReader("") {
+			@Override
+			public int read(char[] buffer, int offset, int length) {
+				throw new OutOfMemoryError("reader");
+			}
+		};
+
+		//expect
+		assertTimeoutPreemptively(Duration.ofSeconds(10), () ->
+				assertThrows(IllegalStateException.class,
+						() -> orderImportService.importOrders(newImportId(), failing, OrderImportFormat.NDJSON)));
+	}
+
+	@Test
+	void onlyAdminMayImportOrders() throws IOException {
+		//given
+		String ndjson = orderJson("E-1", 7, "Phone", product, 1);
+		loggedAs("KATARZYNA");
+
+		//expect
+		assertThrows(IllegalStateException.class,
+				() -> orderController.importOrders(newImportId(), "application/x-ndjson", requestWith(ndjson)));
+
+		//given
+		loggedAs("PIOTR ADMINOWSKI");
+
+		//when
+		OrderImportReport report = orderController.importOrders(newImportId(), "application/x-ndjson", requestWith(ndjson));
+
+		//then
+		assertEquals(1, report.getImportedOrders());
+	}
+
+	@Test
+	void invalidOrdersAreRejectedWithTheirRecordNumber() {
+		//given
+		String ndjson = String.join("\n",
+				orderJson("B-1", 7, "Phone", product, 1),
+				orderJson("B-2", 999, "Phone", product, 1),
+				orderJson("B-3", 7, "Fax", product, 1),
+				orderJson("B-4", 7, "Phone", -1L, 1),
+				orderJson("B-5", 7, "Phone", product, 0),
+				"{not json",
+				orderJson("B-7", 10, "Wire", product, 4));
+
+		//when
+		OrderImportReport report = orderImportService.importOrders(newImportId(), new StringReader(ndjson), OrderImportFormat.NDJSON);
+
+		//then
+		assertEquals(2, report.getImportedOrders());
+		assertEquals(5, report.getRejectedOrders());
+		assertEquals(List.of(2L, 3L, 4L, 5L, 6L), report.getRejections().stream().map(OrderImportReport.Rejection::getRecord).collect(Collectors.toList()));
+		assertEquals("unknown customer 999", report.getRejections().get(0).getReason());
+		assertEquals("unknown orderType Fax", report.getRejections().get(1).getReason());
+		assertEquals("unknown product -1", report.getRejections().get(2).getReason());
+	}
+
+	@Test
+	void interruptedImportResumesAfterTheLastCommittedChunk() {
+		//given a file which breaks while the third chunk is read
+		String importId = newImportId();
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 1; i <= 7; i++) {
+			ndjson.append(orderJson("C-" + i, 7, "Phone", product, i)).append("\n");
+		}
+		String content = ndjson.toString();
+		int breakAt = content.indexOf("C-6");
+		long ordersBefore = countOf("Order");
+
+		//when
+		assertThrows(IllegalStateException.class,
+				() -> orderImportService.importOrders(importId, brokenAfter(content, breakAt), OrderImportFormat.NDJSON));
+		//then
+		assertEquals(4, checkpointRepository.findById(importId).get().getCommittedRecords());
+		assertEquals(ordersBefore + 4, countOf("Order"));
+
+		//when
+		OrderImportReport resumed = orderImportService.importOrders(importId, new StringReader(content), OrderImportFormat.NDJSON);
+
+		//then
+		assertEquals(4, resumed.getSkippedRecords());
+		assertEquals(3, resumed.getImportedOrders());
+		assertEquals(7, checkpointRepository.findById(importId).get().getImportedOrders());
+		assertEquals(ordersBefore + 7, countOf("Order"));
+	}
+
+	@Test
+	void chunksAreCommittedIndependentlyOfTheCallersTransaction() {
+		//given
+		String ndjson = String.join("\n",
+				orderJson("F-1", 7, "Phone", product, 1),
+				orderJson("F-2", 7, "Phone", product, 2),
+				orderJson("F-3", 10, "Wire", product, 3));
+		long ordersBefore = countOf("Order");
+
+		//when
+		transactionTemplate.executeWithoutResult(status -> {
+			Product loaded = entityManager.find(Product.class, product);
+			orderImportService.importOrders(newImportId(), new StringReader(ndjson), OrderImportFormat.NDJSON);
+
+			//then
+			assertTrue(entityManager.contains(loaded));
+			status.setRollbackOnly();
+		});
+
+		//then
+		assertEquals(ordersBefore + 3, countOf("Order"));
+	}
+
+	private String orderJson(String externalId, long customerId, String orderType, Long productId, int quantity) {
+		return "{\"externalId\":\"" + externalId + "\",\"customerId\":" + customerId + ",\"orderType\":\"" + orderType + "\"," +
+				"\"orderState\":\"Initial\",\"lines\":[{\"productId\":" + productId + ",\"quantity\":" + quantity + ",\"price\":\"2.50\"}]}";
+	}
+
+	private Reader brokenAfter(String content, int chars) {
+		return new StringReader(content) {
+			private int read;
+
+			@Override
+			public int read(char[] buffer, int offset, int length) throws IOException {
+				if (read >= chars) {
+					throw new IOException("connection reset");
+				}
+				int n = super.read(buffer, offset, Math.min(length, chars - read));
+				read += Math.max(n, 0);
+				return n;
+			}
+		};
+	}
+
+	private MockHttpServletRequest requestWith(String content) {
+		MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders/import");
+		request.setContent(content.getBytes(StandardCharsets.UTF_8));
+		return request;
+	}
+
+	private void loggedAs(String name) {
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+		Mockito.when(authentication.getName()).thenReturn(name);
+	}
+
+	private String newImportId() {
+		return UUID.randomUUID().toString();
+	}
+
+	private long countOf(String entity) {
+		return entityManager.createQuery("select count(e) from " + entity + " e", Long.class).getSingleResult();
+	}
+
+}
@@ -0,0 +1,137 @@
+package legacyfighter.dietary;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.jdbc.Sql;
+
+import javax.persistence.EntityManagerFactory;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@Sql(scripts = {"/scripts/testdb.sql"})
+class OrderQueryCountTest {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private CustomerService customerService;
+
+	@Autowired
+	private TaxRuleService taxRuleService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	private Statistics statistics;
+
+	@BeforeEach
+	void setup() {
+		statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+	}
+
+	@Test
+	void adminOrdersAreReadWithoutQueryPerOrder() {
+		//piotr admin, 8 orders of 5 different customers
+		List<OrderDto> orders = orderService.getOrdersForAdmin(3L);
+
+		assertEquals(8, orders.size());
+		assertEquals("EDWARD SPRZEDAWCA", orders.get(7).getCustomerDto().getName());
+		//the admin and the projection of all orders
+		assertEquals(2, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityStatistics(Order.class.getName()).getLoadCount());
+	}
+
+	@Test
+	void pagedAndStreamedOrdersAreReadWithoutQueryPerOrder() {
+		//piotr admin
+		orderService.getOrdersForAdmin(3L, null, 5);
+		assertEquals(2, statistics.getPrepareStatementCount());
+
+		statistics.clear();
+		List<OrderDto> streamed = new ArrayList<>();
+		orderService.streamOrdersForAdmin(3L, streamed::add);
+		assertEquals(8, streamed.size());
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void individualOrdersCostOneQueryOnTopOfTheCustomer() {
+		//kasia k$l
+		customerService.getCustomerBy(7L);
+		statistics.clear();
+
+		List<OrderDto> orders = customerService.getIndividualOrdersForCustomer(7L);
+
+		assertEquals(2, orders.size());
+		assertTrue(orders.stream().allMatch(order -> order.getCustomerDto().getId() == 7L));
+		//customers and groups up to the admin come from the second-level cache, but Customer is the inverse
+		//side of its one-to-one with the group, so each of the 4 customers still looks its group up by
+		//customer id; then one query for the orders
+		assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+		assertEquals(5, statistics.getPrepareStatementCount());
+	}
+
+	@Test
+	void addingTaxRuleKeepsCustomersInSecondLevelCache() {
+		//given
+		customerService.getCustomerBy(7L);
+		taxRuleService.createTaxConfigWithRule("qc", TaxRule.linearRule(1, 0, "identity", Year.of(1989)));
+		assertTrue(entityManagerFactory.getCache().contains(Customer.class, 7L));
+
+		//when
+		taxRuleService.addTaxRuleToCountry("qc", 2, 3, "linear");
+
+		//then
+		assertTrue(entityManagerFactory.getCache().contains(Customer.class, 7L));
+	}
+
+	@Test
+	void singleOrderIsAuthorizedWithoutReadingTheSubtree() {
+		//piotr admin
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authentication.getName()).thenReturn("PIOTR ADMINOWSKI");
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+
+		OrderDto order = orderService.getOrderById(8L);
+
+		assertEquals(8L, order.getOrderId());
+		//the admin, its group and the order, whatever the number of orders in the subtree
+		assertEquals(3, statistics.getPrepareStatementCount());
+		assertEquals(0, statistics.getEntityStatistics(Order.class.getName()).getLoadCount());
+	}
+
+	@Test
+	void customerIsReadFromSecondLevelCacheOnceLoaded() {
+		//piotr admin
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authentication.getName()).thenReturn("PIOTR ADMINOWSKI");
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+		orderService.getOrderById(8L);
+		statistics.clear();
+
+		OrderDto order = orderService.getOrderById(8L);
+
+		assertEquals(8L, order.getOrderId());
+		//the admin comes from the natural id and entity caches, only its group and the order are queried
+		assertEquals(1, statistics.getNaturalIdCacheHitCount());
+		assertEquals(2, statistics.getPrepareStatementCount());
+	}
+}
@@ -0,0 +1,124 @@
+package legacyfighter.dietary;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest
+@Sql(scripts = {"/scripts/testdb.sql"})
+class OrderStreamingTest {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private OrderController orderController;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	@Test
+	void adminOrdersArePagedByKeyset() {
+		//piotr admin
+		List<OrderDto> first = orderService.getOrdersForAdmin(3L, null, 3);
+		List<OrderDto> second = orderService.getOrdersForAdmin(3L, lastIdOf(first), 3);
+		List<OrderDto> third = orderService.getOrdersForAdmin(3L, lastIdOf(second), 3);
+		List<OrderDto> fourth = orderService.getOrdersForAdmin(3L, lastIdOf(third), 3);
+
+		assertEquals(List.of(1L, 2L, 3L), idsOf(first));
+		assertEquals(List.of(4L, 5L, 6L), idsOf(second));
+		assertEquals(List.of(7L, 8L), idsOf(third));
+		assertTrue(fourth.isEmpty());
+	}
+
+	@Test
+	void companyOrdersAreStreamedInIdOrder() {
+		//zdrowo jedz
+		List<OrderDto> streamed = new ArrayList<>();
+		orderService.streamOrdersForCompany(1L, streamed::add);
+
+		assertEquals(List.of(1L, 2L, 6L, 7L), idsOf(streamed));
+	}
+
+	@Test
+	void streamingIsRestrictedToCompaniesAndAdmins() {
+		//kasia k$l
+		assertThrows(IllegalStateException.class, () -> orderService.streamOrdersForCompany(7L, order -> { }));
+		assertThrows(IllegalStateException.class, () -> orderService.streamOrdersForAdmin(1L, order -> { }));
+		assertThrows(IllegalArgumentException.class, () -> orderService.getOrdersForAdmin(3L, null, 0));
+	}
+
+	@Test
+	void controllerWritesStreamedOrdersAsJsonArray() throws Exception {
+		//caterinx reads zamowienia caterinx
+		loggedAs("CATERINX");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		orderController.streamCompanyOrders(6L).getBody().writeTo(out);
+
+		JsonNode json = objectMapper.readTree(out.toByteArray());
+		assertTrue(json.isArray());
+		assertEquals(3, json.size());
+		assertEquals(3L, json.get(0).get("orderId").asLong());
+		assertEquals("EDWARD SPRZEDAWCA", json.get(2).get("customerDto").get("name").asText());
+	}
+
+	@Test
+	void controllerRejectsCustomersOutsideCallersSubtreeBeforeStreaming() {
+		//zdrowo jedz asks for caterinx
+		loggedAs("ZDROWO JEDZ");
+
+		assertThrows(IllegalStateException.class, () -> orderController.streamCompanyOrders(2L));
+		assertThrows(IllegalStateException.class, () -> orderController.companyOrders(6L, null, 10));
+		assertThrows(IllegalStateException.class, () -> orderController.adminOrders(3L, null, 10));
+
+		//kasia k$l is not a company, so nothing is streamed
+		loggedAs("PIOTR ADMINOWSKI");
+		assertThrows(IllegalStateException.class, () -> orderController.streamCompanyOrders(7L));
+	}
+
+	@Test
+	void controllerServesOwnSubtreeAndCapsPageSize() {
+		//zdrowo jedz reads its k$l division
+		loggedAs("ZDROWO JEDZ");
+		assertEquals(2, orderController.companyOrders(4L, null, 10).size());
+
+		//piotr admin asks for more than a page can hold
+		loggedAs("PIOTR ADMINOWSKI");
+		assertEquals(8, orderController.adminOrders(3L, null, Integer.MAX_VALUE).size());
+	}
+
+	private void loggedAs(String name) {
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+		Mockito.when(authentication.getName()).thenReturn(name);
+	}
+
+	private Long lastIdOf(List<OrderDto> page) {
+		return page.get(page.size() - 1).getOrderId();
+	}
+
+	private List<Long> idsOf(List<OrderDto> orders) {
+		return orders.stream().map(OrderDto::getOrderId).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,136 @@
+package legacyfighter.dietary;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.math.BigDecimal;
+import java.time.Year;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// rows are written when transactions commit, so the test commits and testdb.sql cleans up
+@SpringBootTest
+@Sql(scripts = {"/scripts/testdb.sql"})
+class OrderTaxProjectionTest {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private TaxRuleService taxRuleService;
+
+	@Autowired
+	private OrderRepository orderRepository;
+
+	@Autowired
+	private OrderTaxRepository orderTaxRepository;
+
+	@Autowired
+	private EntityManager entityManager;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	private String countryCode;
+
+	@BeforeEach
+	void setup() {
+		countryCode = "order-tax-" + UUID.randomUUID();
+		//katarzyna's order 6 becomes the only Initial order of a person
+		transactionTemplate.executeWithoutResult(status -> orderRepository.getOne(6L).setOrderState(Order.OrderState.Initial));
+		taxRuleService.createTaxConfigWithRule(countryCode, TaxRule.linearRule(1, 0, "identity", Year.of(1989)));
+	}
+
+	@Test
+	void taxesAreStoredOnFirstRead() {
+		//when
+		Map<Long, BigDecimal> taxes = orderService.findTaxForOrders(List.of(7L, 8L, 999L));
+
+		//then
+		assertEquals(2, taxes.size());
+		assertEquals(0, BigDecimal.ZERO.compareTo(taxes.get(7L)));
+		assertEquals(0, BigDecimal.ZERO.compareTo(taxes.get(8L)));
+		assertTrue(orderTaxRepository.existsById(7L));
+		assertTrue(orderTaxRepository.existsById(8L));
+		assertEquals(OrderTax.ruleSetVersionOf(List.of()), orderTaxRepository.findById(7L).get().getRuleSetVersion());
+
+		//and
+		assertEquals(0, BigDecimal.ZERO.compareTo(orderService.findTaxForOrders(List.of(7L)).get(7L)));
+	}
+
+	@Test
+	void onlyOrdersWhoseRulesChangeAreRecomputed() {
+		//given
+		orderService.findTaxForOrders(List.of(6L, 7L));
+		long versionOf7 = orderTaxRepository.findById(7L).get().getRuleSetVersion();
+
+		//when
+		taxRuleService.addTaxRuleToCountry(countryCode, 2, 3, "linear");
+
+		//then
+		OrderTax taxOf6 = orderTaxRepository.findById(6L).get();
+		assertEquals(0, new BigDecimal(3).compareTo(taxOf6.getTax()));
+		assertNotEquals(OrderTax.ruleSetVersionOf(List.of()), taxOf6.getRuleSetVersion());
+		assertEquals(versionOf7, orderTaxRepository.findById(7L).get().getRuleSetVersion());
+
+		//and
+		assertEquals(0, new BigDecimal(3).compareTo(orderService.findTaxForOrders(List.of(6L)).get(6L)));
+	}
+
+	@Test
+	void rowIsRecomputedWhenLinesOfTheOrderChange() {
+		//given
+		orderService.findTaxForOrders(List.of(7L));
+
+		//when
+		transactionTemplate.executeWithoutResult(status -> {
+			OrderLine line = new OrderLine();
+			line.setPrice(new BigDecimal("4"));
+			line.setQuantity(2);
+			orderRepository.getOne(7L).addItem(line);
+		});
+
+		//then
+		assertEquals(0, new BigDecimal(8).compareTo(orderTaxRepository.findById(7L).get().getOrderTotal()));
+		assertEquals(0, new BigDecimal(8).compareTo(orderService.findTaxForOrders(List.of(7L)).get(7L)));
+
+		//when
+		transactionTemplate.executeWithoutResult(status -> onlyLineOf(7L).setQuantity(3));
+
+		//then
+		assertEquals(0, new BigDecimal(12).compareTo(orderService.findTaxForOrders(List.of(7L)).get(7L)));
+
+		//when
+		transactionTemplate.executeWithoutResult(status -> entityManager.remove(onlyLineOf(7L)));
+
+		//then
+		assertEquals(0, BigDecimal.ZERO.compareTo(orderService.findTaxForOrders(List.of(7L)).get(7L)));
+	}
+
+	@Test
+	void ruleSetVersionFollowsTheOrderOfTheChain() {
+		//expect
+		assertNotEquals(OrderTax.ruleSetVersionOf(List.of(1L, 2L)), OrderTax.ruleSetVersionOf(List.of(2L, 1L)));
+	}
+
+	private OrderLine onlyLineOf(Long orderId) {
+		return entityManager.createQuery("select l from OrderLine l where l.order.id = :id", OrderLine.class)
+				.setParameter("id", orderId)
+				.getSingleResult();
+	}
+
+}
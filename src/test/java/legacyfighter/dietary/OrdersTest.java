@@ -11,7 +11,9 @@ import org.springframework.test.context.jdbc.Sql;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 
 @SpringBootTest
@@ -24,6 +26,9 @@ class OrdersTest {
 	@Autowired
 	private CustomerService customerService;
 
+	@Autowired
+	private CustomerOrderGroupRepository customerOrderGroupRepository;
+
 	@MockBean
 	private AuthenticationContextFacade authenticationContextFacade;
 
@@ -64,6 +69,40 @@ class OrdersTest {
 
 	}
 
+	@Test
+	void divisionMovedToAnotherCompanyTest() {
+		//logistyka zdrowo jedz moves to caterinx
+		customerService.moveCustomerOrderGroup(5L, 2L);
+
+		assertEquals(2, orderService.getOrdersForCompany(1L).size());
+		assertEquals(6, orderService.getOrdersForCompany(2L).size());
+		assertEquals(2, orderService.getOrdersForCompany(5L).size());
+		assertEquals(8, orderService.getOrdersForAdmin(3L).size());
+	}
+
+	@Test
+	void cannotMoveCompanyUnderItsOwnDivisionTest() {
+		assertThrows(IllegalStateException.class, () -> customerService.moveCustomerOrderGroup(1L, 4L));
+		assertThrows(IllegalStateException.class, () -> customerService.moveCustomerOrderGroup(1L, 1L));
+	}
+
+	@Test
+	void groupPersistedThroughJpaGetsItsPath() {
+		//when
+		CustomerOrderGroup group = customerOrderGroupRepository.save(new CustomerOrderGroup());
+
+		//then
+		assertEquals("/" + group.getId() + "/", group.getPath());
+		assertTrue(group.isInSubtreeOf(group));
+
+		//when
+		customerService.moveCustomerOrderGroup(group.getId(), 1L);
+
+		//then
+		CustomerOrderGroup moved = customerOrderGroupRepository.findById(group.getId()).orElseThrow();
+		assertEquals("/3/1/" + group.getId() + "/", moved.getPath());
+	}
+
 	@Test
 	void personOrRepresentativeTest() {
 		//kasia k$l
@@ -99,4 +138,23 @@ class OrdersTest {
 		assertEquals(4, zdrowoJedz.size());
 	}
 
+	@Test
+	void singleOrderIsVisibleOnlyWithinCallersSubtree() {
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+
+		//admin sees any order
+		Mockito.when(authentication.getName()).thenReturn("PIOTR ADMINOWSKI");
+		assertEquals(8L, orderService.getOrderById(8L).getOrderId());
+
+		//zdrowo jedz sees its own orders, but not those of caterinx
+		Mockito.when(authentication.getName()).thenReturn("ZDROWO JEDZ");
+		assertEquals(6L, orderService.getOrderById(6L).getOrderId());
+		assertNull(orderService.getOrderById(3L));
+
+		//katarzyna sees only her own orders
+		Mockito.when(authentication.getName()).thenReturn("KATARZYNA");
+		assertNull(orderService.getOrderById(1L));
+	}
+
 }
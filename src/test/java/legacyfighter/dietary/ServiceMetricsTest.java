@@ -0,0 +1,66 @@
+package legacyfighter.dietary;
+
+import legacyfighter.dietary.config.ServiceMetrics;
+import legacyfighter.dietary.config.ServiceMetricsController;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.core.Authentication;
+import org.springframework.test.context.jdbc.Sql;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@SpringBootTest(properties = "metrics.query-budget=2")
+@Sql(scripts = {"/scripts/testdb.sql"})
+class ServiceMetricsTest {
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private ServiceMetrics serviceMetrics;
+
+	@Autowired
+	private ServiceMetricsController serviceMetricsController;
+
+	@MockBean
+	private AuthenticationContextFacade authenticationContextFacade;
+
+	@Test
+	void serviceCallsAreMeasuredPerOperation() {
+		//piotr admin
+		Map<String, Number> before = metricsOf("OrderService.getOrdersForAdmin(Long,Long,int)");
+
+		orderService.getOrdersForAdmin(3L, null, 5);
+		orderService.getOrdersForAdmin(3L, null, 5);
+
+		Map<String, Number> after = metricsOf("OrderService.getOrdersForAdmin(Long,Long,int)");
+		assertEquals(2, after.get("invocations").longValue() - before.get("invocations").longValue());
+		assertEquals(4, after.get("queries").longValue() - before.get("queries").longValue());
+		assertEquals(2, after.get("maxQueries").longValue());
+		assertTrue(after.get("entityLoads").longValue() > before.get("entityLoads").longValue());
+	}
+
+	@Test
+	void callsOverQueryBudgetAreFlagged() {
+		//kasia k$l asks for an order of her own
+		Authentication authentication = mock(Authentication.class);
+		Mockito.when(authentication.getName()).thenReturn("KATARZYNA");
+		Mockito.when(authenticationContextFacade.getAuthentication()).thenReturn(authentication);
+		long overBudget = serviceMetrics.overBudgetCount("OrderService.getLoggedCustomerOrders(boolean)");
+
+		orderService.getLoggedCustomerOrders(false);
+
+		assertEquals(overBudget + 1, serviceMetrics.overBudgetCount("OrderService.getLoggedCustomerOrders(boolean)"));
+	}
+
+	private Map<String, Number> metricsOf(String operation) {
+		return serviceMetricsController.serviceMetrics().getOrDefault(operation, Map.of("invocations", 0, "queries", 0, "entityLoads", 0));
+	}
+}
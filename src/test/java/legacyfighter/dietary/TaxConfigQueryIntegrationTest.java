@@ -1,15 +1,23 @@
 package legacyfighter.dietary;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import java.io.ByteArrayInputStream;
 import java.time.*;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.when;
@@ -26,6 +34,12 @@ class TaxConfigQueryIntegrationTest {
     @Autowired
     TaxRuleService taxRuleService;
 
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    EntityManager entityManager;
+
     @MockBean
     Clock clock;
 
@@ -44,7 +58,7 @@ class TaxConfigQueryIntegrationTest {
         taxRuleService.addTaxRuleToCountry("pl", 2, 3, 4,"plsquare");
 
         //when
-        Map<String, List<TaxRule>> result = taxConfigController.taxConfigs();
+        Map<String, List<TaxRule>> result = taxRuleService.findAllRules();
 
         //then
         assertEquals(3, result.size());
@@ -80,4 +94,111 @@ class TaxConfigQueryIntegrationTest {
         assertEquals(9, mexRule.getcSquareFactor());
     }
 
-}
\ No newline at end of file
+    @Test
+    void shouldHandOutRulesDetachedFromPersistenceContext() {
+        //given
+        taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(5, 6, "pllinear", Year.of(1989)));
+
+        //when
+        TaxRule rule = taxRuleService.findAllRules().get("pl").get(0);
+
+        //then
+        assertFalse(entityManager.contains(rule));
+        assertEquals(rule.getId(), taxRuleService.findRules("pl").get(0).getId());
+    }
+
+    @Test
+    void shouldServeSerializedConfigsWithEtag() throws Exception {
+        //given
+        taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(5, 6, "pllinear", Year.of(1989)));
+
+        //when
+        ResponseEntity<byte[]> first = taxConfigController.serializedTaxConfigs(null, null);
+        ResponseEntity<byte[]> second = taxConfigController.serializedTaxConfigs(first.getHeaders().getETag(), null);
+
+        //then
+        assertEquals(HttpStatus.OK, first.getStatusCode());
+        JsonNode json = objectMapper.readTree(first.getBody());
+        assertEquals("A. 899. 1989pllinear", json.get("pl").get(0).get("taxCode").asText());
+        assertEquals(HttpStatus.NOT_MODIFIED, second.getStatusCode());
+        assertNull(second.getBody());
+
+        //when config changes
+        taxRuleService.addTaxRuleToCountry("pl", 2, 3, 4, "plsquare");
+
+        //then
+        ResponseEntity<byte[]> third = taxConfigController.serializedTaxConfigs(first.getHeaders().getETag(), null);
+        assertEquals(HttpStatus.OK, third.getStatusCode());
+        assertNotEquals(first.getHeaders().getETag(), third.getHeaders().getETag());
+        assertEquals(2, objectMapper.readTree(third.getBody()).get("pl").size());
+    }
+
+    @Test
+    void shouldServeGzippedConfigs() throws Exception {
+        //given
+        taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(5, 6, "pllinear", Year.of(1989)));
+
+        //when
+        ResponseEntity<byte[]> result = taxConfigController.serializedTaxConfigs(null, "gzip, deflate");
+
+        //then
+        assertEquals("gzip", result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(result.getBody()))) {
+            assertEquals(1, objectMapper.readTree(gzip).get("pl").size());
+        }
+    }
+
+    @Test
+    void shouldTagEachEncodingSeparately() {
+        //given
+        taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(5, 6, "pllinear", Year.of(1989)));
+
+        //when
+        ResponseEntity<byte[]> plain = taxConfigController.serializedTaxConfigs(null, "gzip;q=0, identity");
+        ResponseEntity<byte[]> gzipped = taxConfigController.serializedTaxConfigs(null, "br, gzip;q=0.5");
+        ResponseEntity<byte[]> plainRevalidatedWithGzipTag = taxConfigController.serializedTaxConfigs(gzipped.getHeaders().getETag(), null);
+        ResponseEntity<byte[]> gzippedRevalidated = taxConfigController.serializedTaxConfigs(gzipped.getHeaders().getETag(), "gzip");
+
+        //then
+        assertNull(plain.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("gzip", gzipped.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        assertNotEquals(plain.getHeaders().getETag(), gzipped.getHeaders().getETag());
+        assertEquals(HttpStatus.OK, plainRevalidatedWithGzipTag.getStatusCode());
+        assertEquals(HttpStatus.NOT_MODIFIED, gzippedRevalidated.getStatusCode());
+        assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), gzippedRevalidated.getHeaders().getVary());
+    }
+
+    @Test
+    void shouldHonourAcceptEncodingQValues() {
+        //expect
+        assertTrue(TaxConfigController.acceptsGzip("gzip, deflate"));
+        assertTrue(TaxConfigController.acceptsGzip("deflate;q=1, GZIP;q=0.1"));
+        assertTrue(TaxConfigController.acceptsGzip("*"));
+        assertFalse(TaxConfigController.acceptsGzip("gzip;q=0"));
+        assertFalse(TaxConfigController.acceptsGzip("*;q=1, gzip;q=0.0"));
+        assertFalse(TaxConfigController.acceptsGzip("identity"));
+        assertFalse(TaxConfigController.acceptsGzip(null));
+    }
+
+    @Test
+    void shouldReturnOnlyCountriesChangedSince() throws Exception {
+        //given
+        taxRuleService.createTaxConfigWithRule("pl", TaxRule.linearRule(5, 6, "pllinear", Year.of(1989)));
+        taxRuleService.createTaxConfigWithRule("en", TaxRule.squareRule(5, 6, 8, "ensquare", Year.of(1989)));
+
+        //and
+        Instant later = _1989_12_12.plus(Duration.ofDays(1));
+        when(clock.instant()).thenReturn(later);
+        taxRuleService.addTaxRuleToCountry("en", 2, 3, "enlinear");
+
+        //when
+        JsonNode changed = objectMapper.readTree(taxConfigController.taxConfigsChangedSince(_1989_12_12).getBody());
+        JsonNode all = objectMapper.readTree(taxConfigController.taxConfigsChangedSince(Instant.EPOCH).getBody());
+
+        //then
+        assertEquals(1, changed.size());
+        assertEquals(2, changed.get("en").size());
+        assertEquals(2, all.size());
+    }
+
+}
@@ -0,0 +1,84 @@
+package legacyfighter.dietary;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Year;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaxEvaluatorTest {
+
+    @Test
+    void evaluatesLinearChain() {
+        //given
+        TaxEvaluator evaluator = TaxEvaluator.compile(List.of(linear(2, 3), linear(5, 1)));
+
+        //expect
+        assertEquals(new BigDecimal(16), evaluator.evaluate(BigDecimal.ZERO));
+        assertEquals(new BigDecimal(26), evaluator.evaluate(BigDecimal.ONE));
+    }
+
+    @Test
+    void evaluatesSquareRuleWithItsOwnFactors() {
+        //given
+        TaxEvaluator evaluator = TaxEvaluator.compile(List.of(linear(1, 2), square(3, 4, 5)));
+
+        //expect 3 * 2^2 + 4 * 2 + 5
+        assertEquals(new BigDecimal(25), evaluator.evaluate(BigDecimal.ZERO));
+    }
+
+    @Test
+    void fallsBackToArbitraryPrecisionOnOverflow() {
+        //given
+        TaxEvaluator evaluator = TaxEvaluator.compile(List.of(linear(1, 1_000_000), square(1, 0, 0), square(1, 0, 0), square(1, 0, 0)));
+
+        //expect
+        assertEquals(BigDecimal.TEN.pow(48), evaluator.evaluate(BigDecimal.ZERO));
+    }
+
+    @Test
+    void evaluatesFractionalInitialValue() {
+        //given
+        TaxEvaluator evaluator = TaxEvaluator.compile(List.of(square(2, 1, 1)));
+
+        //expect 2 * 1.5^2 + 1.5 + 1
+        assertEquals(0, new BigDecimal("7.00").compareTo(evaluator.evaluate(new BigDecimal("1.5"))));
+    }
+
+    @Test
+    void emptyChainReturnsInitialValue() {
+        assertEquals(BigDecimal.ZERO, TaxEvaluator.compile(List.of()).evaluate(BigDecimal.ZERO));
+    }
+
+    @Test
+    void cachesEvaluatorPerRuleChain() {
+        //given
+        TaxEvaluatorCache cache = new TaxEvaluatorCache();
+        TaxRule first = withId(linear(2, 3), 1L);
+        TaxRule second = withId(square(1, 2, 3), 2L);
+
+        //when
+        TaxEvaluator evaluator = cache.forRules(List.of(first, second));
+
+        //then
+        assertSame(evaluator, cache.forRules(List.of(first, second)));
+        assertNotSame(evaluator, cache.forRules(List.of(second, first)));
+        assertEquals(2, cache.size());
+    }
+
+    private TaxRule linear(int a, int b) {
+        return TaxRule.linearRule(a, b, "linear", Year.of(1989));
+    }
+
+    private TaxRule square(int a, int b, int c) {
+        return TaxRule.squareRule(a, b, c, "square", Year.of(1989));
+    }
+
+    private TaxRule withId(TaxRule rule, Long id) {
+        ReflectionTestUtils.setField(rule, "id", id);
+        return rule;
+    }
+}
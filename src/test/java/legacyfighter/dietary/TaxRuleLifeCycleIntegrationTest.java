@@ -1,13 +1,16 @@
 package legacyfighter.dietary;
 
+import legacyfighter.dietary.config.ServiceMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.test.context.jdbc.Sql;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
 import java.time.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,6 +28,18 @@ class TaxRuleLifeCycleIntegrationTest {
     @Autowired
     TaxConfigRepository taxConfigRepository;
 
+    @Autowired
+    OrderRepository orderRepository;
+
+    @Autowired
+    TaxConfigCache taxConfigCache;
+
+    @Autowired
+    ServiceMetrics serviceMetrics;
+
+    @Autowired
+    EntityManager entityManager;
+
     @MockBean
     Clock clock;
 
@@ -200,6 +215,28 @@ class TaxRuleLifeCycleIntegrationTest {
         assertEquals(2, newRule.getbFactor());
     }
 
+    @Test
+    @Sql(scripts = {"/scripts/testdb.sql"})
+    void shouldPropagateLinearTaxRuleToInitialOrdersOfPersons() {
+        //given
+        String countryCode = "country-code";
+        taxRuleService.createTaxConfigWithRule(countryCode, linearTaxRule("B1", 5, 6));
+
+        //and kasia k$l has an initial order
+        orderRepository.getOne(6L).setOrderState(Order.OrderState.Initial);
+
+        //when
+        taxRuleService.addTaxRuleToCountry(countryCode, 3, 2, "tax-code");
+
+        //then
+        assertEquals(1, orderRepository.getOne(6L).getTaxRules().size());
+        assertEquals("A. 899. 1989tax-code", orderRepository.getOne(6L).getTaxRules().get(0).getTaxCode());
+        //paid order of a person
+        assertTrue(orderRepository.getOne(7L).getTaxRules().isEmpty());
+        //initial order of a division
+        assertTrue(orderRepository.getOne(1L).getTaxRules().isEmpty());
+    }
+
     @Test
     void shouldAddSquareTaxRuleToNewlyCreatedConfig() {
         //given
@@ -275,6 +312,50 @@ class TaxRuleLifeCycleIntegrationTest {
         assertEquals(4, newRule.getcSquareFactor());
     }
 
+    @Test
+    void shouldServeRulesFromCacheUntilConfigChanges() {
+        //given
+        String countryCode = "country-code";
+        taxRuleService.createTaxConfigWithRule(countryCode, linearTaxRule("B1", 5, 6));
+        taxRuleService.findRules(countryCode);
+        long hits = taxConfigCache.hitCount();
+        long misses = taxConfigCache.missCount();
+
+        //when
+        taxRuleService.findRules(countryCode);
+
+        //then
+        assertEquals(hits + 1, taxConfigCache.hitCount());
+        assertEquals(misses, taxConfigCache.missCount());
+        assertEquals(taxConfigCache.hitCount(), serviceMetrics.snapshot().get("cache.tax-config").get("hits"));
+        assertFalse(entityManager.contains(taxRuleService.findRules(countryCode).get(0)));
+
+        //when
+        taxRuleService.addTaxRuleToCountry(countryCode, 2, 3, "B2");
+
+        //then
+        assertEquals(2, taxRuleService.findRules(countryCode).size());
+        assertEquals(misses + 1, taxConfigCache.missCount());
+    }
+
+    @Test
+    void shouldNotCacheRulesLoadedBeforeConcurrentInvalidation() {
+        //given
+        String countryCode = "country-code";
+        TaxConfig taxConfig = taxRuleService.createTaxConfigWithRule(countryCode, linearTaxRule("B1", 5, 6));
+
+        //when
+        taxConfigCache.rulesOf(countryCode, () -> {
+            taxConfigCache.invalidate(countryCode);
+            return taxConfig;
+        });
+
+        //then
+        long misses = taxConfigCache.missCount();
+        taxRuleService.findRules(countryCode);
+        assertEquals(misses + 1, taxConfigCache.missCount());
+    }
+
     @Test
     void shouldRemoveRule() {
         //given
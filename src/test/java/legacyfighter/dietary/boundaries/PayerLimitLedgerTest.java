@@ -0,0 +1,179 @@
+package legacyfighter.dietary.boundaries;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PayerLimitLedgerTest {
+
+    static final PayerId PAYER_ID = new PayerId(1L);
+
+    PaymentServiceTest.StubPayers payers = new PaymentServiceTest.StubPayers(new BigDecimal("100.00"));
+    PayerLimitLedger ledger = new PayerLimitLedger(payers);
+
+    @Test
+    void reservesOnlyWhatIsAvailable() {
+        //expect
+        assertTrue(ledger.tryPay(PAYER_ID, new BigDecimal("99.99")));
+        assertFalse(ledger.tryPay(PAYER_ID, new BigDecimal("0.02")));
+        assertTrue(ledger.tryPay(PAYER_ID, new BigDecimal("0.01")));
+        assertEquals(new BigDecimal("0.00"), ledger.availableLimitOf(PAYER_ID));
+    }
+
+    @Test
+    void rejectsFractionsOfCents() {
+        //expect
+        assertThrows(IllegalArgumentException.class, () -> ledger.tryPay(PAYER_ID, new BigDecimal("0.001")));
+    }
+
+    @Test
+    void writesChangedPayersBehindInBatches() {
+        //given
+        ledger.tryPay(PAYER_ID, new BigDecimal("10"));
+        ledger.tryPay(new PayerId(2L), new BigDecimal("20"));
+        ledger.payUsingExtraLimit(PAYER_ID, new BigDecimal("5"));
+        ledger.availableLimitOf(new PayerId(3L));
+
+        //when
+        int written = ledger.flush();
+
+        //then
+        assertEquals(2, written);
+        assertEquals(0, ledger.flush());
+        Payer payer = payers.saved.stream().filter(p -> p.getPayerId().equals(PAYER_ID)).findFirst().orElseThrow();
+        assertEquals(new BigDecimal("90.00"), payer.getAvailableLimit());
+        assertEquals(new BigDecimal("995.00"), payer.getExtraLimit());
+    }
+
+    @Test
+    void writtenPayersAreEvictedAndLoadedAgainWithTheirLimits() {
+        //given
+        ledger.tryPay(PAYER_ID, new BigDecimal("10"));
+        ledger.availableLimitOf(new PayerId(2L));
+
+        //when
+        ledger.flush();
+
+        //then
+        assertEquals(0, ledger.loadedPayers());
+        assertEquals(new BigDecimal("90.00"), ledger.availableLimitOf(PAYER_ID));
+        assertEquals(1, ledger.loadedPayers());
+    }
+
+    @Test
+    void payersOfFailedFlushAreWrittenByTheNextOne() {
+        //given
+        FailingPayers failing = new FailingPayers(1);
+        PayerLimitLedger ledger = new PayerLimitLedger(failing);
+        ledger.tryPay(PAYER_ID, new BigDecimal("10"));
+
+        //when
+        assertThrows(IllegalStateException.class, ledger::flush);
+
+        //then
+        assertEquals(1, ledger.loadedPayers());
+        assertEquals(1, ledger.flush());
+        assertEquals(new BigDecimal("90.00"), failing.saved.get(0).getAvailableLimit());
+    }
+
+    @Test
+    void scheduledFlushKeepsRunningAfterFailure() throws Exception {
+        //given
+        FailingPayers failing = new FailingPayers(3);
+        PayerLimitLedger ledger = new PayerLimitLedger(failing);
+        ScheduledExecutorService writeBehind = Executors.newSingleThreadScheduledExecutor();
+        ledger.tryPay(PAYER_ID, new BigDecimal("10"));
+
+        //when
+        ledger.flushEvery(Duration.ofMillis(1), writeBehind);
+
+        //then
+        try {
+            assertTrue(failing.written.await(5, TimeUnit.SECONDS));
+        } finally {
+            writeBehind.shutdownNow();
+        }
+    }
+
+    @Test
+    void concurrentPaymentsNeverOverdrawNorLoseUpdates() throws Exception {
+        //given 100.00 of limit, 64 threads paying 0.01 each 500 times
+        int threads = 64;
+        int paymentsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger succeeded = new AtomicInteger();
+        ScheduledExecutorService writeBehind = Executors.newSingleThreadScheduledExecutor();
+        ledger.flushEvery(Duration.ofMillis(1), writeBehind);
+
+        //when
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < paymentsPerThread; i++) {
+                    if (ledger.tryPay(PAYER_ID, new BigDecimal("0.01"))) {
+                        succeeded.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        writeBehind.shutdown();
+        writeBehind.awaitTermination(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        ledger.flush();
+
+        //then exactly the limit was spent
+        assertEquals(10_000, succeeded.get());
+        assertEquals(new BigDecimal("0.00"), ledger.availableLimitOf(PAYER_ID));
+        Payer lastWritten = payers.saved.get(payers.saved.size() - 1);
+        assertEquals(new BigDecimal("0.00"), lastWritten.getAvailableLimit());
+    }
+
+    @Test
+    void paymentServiceUsesLedger() {
+        //given
+        PaymentServiceTest.StubOrders orders = new PaymentServiceTest.StubOrders(0);
+        PaymentService paymentService = new PaymentService(payers, new PaymentServiceTest.StubAddresses("Europe"), orders,
+                new PaymentServiceTest.StubClaims(true), null, null, new VipStatusCache(Clock.systemUTC(), Duration.ofHours(1), 100), ledger);
+
+        //expect
+        assertTrue(paymentService.pay(PAYER_ID, new BigDecimal("60")));
+        assertFalse(paymentService.pay(PAYER_ID, new BigDecimal("60")));
+        assertEquals(new BigDecimal("40.00"), ledger.availableLimitOf(PAYER_ID));
+        assertEquals(1, orders.informed.size());
+    }
+
+    static class FailingPayers extends PaymentServiceTest.StubPayers {
+        final AtomicInteger failuresLeft;
+        final CountDownLatch written = new CountDownLatch(1);
+
+        FailingPayers(int failures) {
+            super(new BigDecimal("100.00"));
+            this.failuresLeft = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void saveAll(Collection<Payer> payers) {
+            if (failuresLeft.getAndDecrement() > 0) {
+                throw new IllegalStateException("database unavailable");
+            }
+            super.saveAll(payers);
+            written.countDown();
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package legacyfighter.dietary.boundaries;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PaymentServiceTest {
+
+    static final PayerId PAYER_ID = new PayerId(1L);
+
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    StubOrders orders = new StubOrders(11);
+    MovingClock clock = new MovingClock();
+    StubAddresses addresses = new StubAddresses("Europe");
+    ClaimsRemoteService claims = new StubClaims(true);
+    PayerRepository payers = new StubPayers(BigDecimal.TEN);
+
+    @AfterEach
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void vipCanPayOverLimitInBothModes() {
+        //expect
+        assertTrue(sequential().pay(PAYER_ID, new BigDecimal(100)));
+        assertTrue(concurrent(Duration.ofSeconds(1)).pay(PAYER_ID, new BigDecimal(100)));
+        assertEquals(2, orders.informed.size());
+    }
+
+    @Test
+    void nonVipCannotPayOverLimitInBothModes() {
+        //given
+        claims = new StubClaims(false);
+
+        //expect
+        assertFalse(sequential().pay(PAYER_ID, new BigDecimal(100)));
+        assertFalse(concurrent(Duration.ofSeconds(1)).pay(PAYER_ID, new BigDecimal(100)));
+        assertTrue(orders.informed.isEmpty());
+    }
+
+    @Test
+    void payerWithinLimitDoesNotTriggerVipChecks() {
+        //given
+        addresses = new StubAddresses(null);
+
+        //expect
+        assertTrue(concurrent(Duration.ofSeconds(1)).pay(PAYER_ID, BigDecimal.ONE));
+    }
+
+    @Test
+    void failedCheckCancelsSlowOnes() throws InterruptedException {
+        //given claims failing only once the slow address check is running
+        addresses.delay = Duration.ofSeconds(10);
+        claims = payerId -> {
+            try {
+                addresses.started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        };
+
+        //when
+        Instant start = Instant.now();
+        boolean paid = concurrent(Duration.ofSeconds(30)).pay(PAYER_ID, new BigDecimal(100));
+
+        //then
+        assertFalse(paid);
+        assertTrue(Duration.between(start, Instant.now()).compareTo(Duration.ofSeconds(5)) < 0);
+        assertTrue(addresses.interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void checkNotAnsweringInTimeFailsVipStatus() {
+        //given
+        orders.delay = Duration.ofSeconds(10);
+
+        //expect
+        assertFalse(concurrent(Duration.ofMillis(100)).pay(PAYER_ID, new BigDecimal(100)));
+    }
+
+    @Test
+    void timeoutIsCountedFromStartOfEachCheck() {
+        //given checks queued one after another, each answering within the timeout
+        executor = Executors.newSingleThreadExecutor();
+        orders.delay = Duration.ofMillis(200);
+        addresses.delay = Duration.ofMillis(200);
+        claims = payerId -> {
+            sleep(Duration.ofMillis(200));
+            return true;
+        };
+
+        //expect
+        assertTrue(concurrent(Duration.ofMillis(350)).pay(PAYER_ID, new BigDecimal(100)));
+    }
+
+    @Test
+    void saturatedExecutorFailsTheCheckWithinOverallDeadline() {
+        //given the only worker is busy for longer than the checks may take together
+        executor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(() -> {
+            release.await();
+            return null;
+        });
+
+        //when
+        boolean paid = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> concurrent(Duration.ofMillis(100)).pay(PAYER_ID, new BigDecimal(100)));
+
+        //then
+        release.countDown();
+        assertFalse(paid);
+    }
+
+    @Test
+    void remoteFailureIsPropagated() {
+        //given
+        addresses = new StubAddresses(null);
+
+        //expect
+        assertThrows(NullPointerException.class, () -> concurrent(Duration.ofSeconds(1)).pay(PAYER_ID, new BigDecimal(100)));
+    }
+
+    @Test
+    void repeatPayerIsQualifiedFromCachedOrderCount() {
+        //given
+        orders = new StubOrders(10);
+        payers = new StubPayers(new BigDecimal(150));
+        PaymentService paymentService = cached(new VipStatusCache(clock, Duration.ofHours(1), 100));
+
+        //expect not a vip with 10 big orders
+        assertFalse(paymentService.pay(PAYER_ID, new BigDecimal(200)));
+
+        //when
+        assertTrue(paymentService.pay(PAYER_ID, new BigDecimal(120)));
+
+        //then vip with 11 big orders, history downloaded only once
+        assertTrue(paymentService.pay(PAYER_ID, new BigDecimal(200)));
+        assertEquals(1, orders.fetched);
+    }
+
+    @Test
+    void repeatPayerDoesNotDownloadOrderHistoryAgainInBothModes() {
+        //given
+        PaymentService sequential = sequential();
+        PaymentService concurrent = concurrent(Duration.ofSeconds(1));
+
+        //when
+        sequential.pay(PAYER_ID, new BigDecimal(100));
+        sequential.pay(PAYER_ID, new BigDecimal(100));
+        concurrent.pay(PAYER_ID, new BigDecimal(100));
+        concurrent.pay(PAYER_ID, new BigDecimal(100));
+
+        //then
+        assertEquals(4, orders.informed.size());
+        assertEquals(2, orders.fetched);
+    }
+
+    @Test
+    void cachedOrderCountExpires() {
+        //given
+        PaymentService paymentService = cached(new VipStatusCache(clock, Duration.ofMinutes(5), 100));
+        paymentService.pay(PAYER_ID, new BigDecimal(100));
+
+        //when
+        clock.move(Duration.ofMinutes(5));
+        paymentService.pay(PAYER_ID, new BigDecimal(100));
+
+        //then
+        assertEquals(2, orders.fetched);
+    }
+
+    @Test
+    void cacheIsBoundedInSize() {
+        //given
+        VipStatusCache cache = new VipStatusCache(clock, Duration.ofHours(1), 2);
+
+        //when
+        for (long id = 0; id < 5; id++) {
+            cache.qualifyingOrders(new PayerId(id), () -> 1);
+        }
+
+        //then
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void orderPlacedWhileCountIsLoadedIsNotLost() throws Exception {
+        //given a load of the count in progress
+        VipStatusCache cache = new VipStatusCache(clock, Duration.ofHours(1), 100);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> cache.qualifyingOrders(PAYER_ID, () -> {
+            loading.countDown();
+            await(release);
+            return 10;
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        //when an order is placed meanwhile
+        Thread placing = new Thread(() -> cache.qualifyingOrderPlaced(PAYER_ID));
+        placing.start();
+        Thread.sleep(100);
+        release.countDown();
+        placing.join(5000);
+
+        //then
+        assertEquals(11, cache.qualifyingOrders(PAYER_ID, () -> 0));
+    }
+
+    PaymentService cached(VipStatusCache cache) {
+        return new PaymentService(payers, addresses, orders, claims, null, null, cache);
+    }
+
+    PaymentService sequential() {
+        return new PaymentService(payers, addresses, orders, claims, Duration.ofHours(1));
+    }
+
+    PaymentService concurrent(Duration timeout) {
+        return new PaymentService(payers, addresses, orders, claims, executor, timeout, Duration.ofHours(1));
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void sleep(Duration delay) {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class StubPayers implements PayerRepository {
+        final BigDecimal availableLimit;
+        final List<Payer> saved = Collections.synchronizedList(new ArrayList<>());
+
+        StubPayers(BigDecimal availableLimit) {
+            this.availableLimit = availableLimit;
+        }
+
+        // a payer saved before is found with its saved limits
+        @Override
+        public Payer findById(PayerId payerId) {
+            synchronized (saved) {
+                for (int i = saved.size() - 1; i >= 0; i--) {
+                    Payer payer = saved.get(i);
+                    if (payer.getPayerId().equals(payerId)) {
+                        return new Payer(payerId, 30, payer.getAvailableLimit(), payer.getExtraLimit());
+                    }
+                }
+            }
+            return new Payer(payerId, 30, availableLimit, new BigDecimal(1000));
+        }
+
+        @Override
+        public void saveAll(Collection<Payer> payers) {
+            saved.addAll(payers);
+        }
+    }
+
+    static class StubOrders implements OrderRemoteService {
+        final List<BigDecimal> informed = Collections.synchronizedList(new ArrayList<>());
+        final int bigOrders;
+        Duration delay = Duration.ZERO;
+        volatile int fetched;
+
+        StubOrders(int bigOrders) {
+            this.bigOrders = bigOrders;
+        }
+
+        @Override
+        public List<ClientOrder> getByPayerId(PayerId payerId) {
+            sleep(delay);
+            fetched++;
+            List<ClientOrder> result = new ArrayList<>();
+            for (int i = 0; i < bigOrders; i++) {
+                result.add(new ClientOrder(new BigDecimal(500), Instant.now()));
+            }
+            return result;
+        }
+
+        @Override
+        public void informAboutNewOrderWithPayment(BigDecimal amount) {
+            informed.add(amount);
+        }
+    }
+
+    static class StubAddresses implements ClientAddressRemoteService {
+        final String continent;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        Duration delay = Duration.ZERO;
+
+        StubAddresses(String continent) {
+            this.continent = continent;
+        }
+
+        @Override
+        public ClientAddress getByPayerId(PayerId payerId) {
+            started.countDown();
+            try {
+                Thread.sleep(delay.toMillis());
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return new ClientAddress("street", "city", "country", continent);
+        }
+    }
+
+    static class StubClaims implements ClaimsRemoteService {
+        final boolean noClaims;
+
+        StubClaims(boolean noClaims) {
+            this.noClaims = noClaims;
+        }
+
+        @Override
+        public boolean clientHasNoClaims(PayerId payerId) {
+            return noClaims;
+        }
+    }
+
+    static class MovingClock extends Clock {
+        Instant now = Instant.parse("2020-01-01T00:00:00Z");
+
+        void move(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
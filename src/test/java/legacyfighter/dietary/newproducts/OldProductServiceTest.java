@@ -1,14 +1,34 @@
 package legacyfighter.dietary.newproducts;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.ByteArrayOutputStream;
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import static java.math.BigDecimal.ZERO;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 class OldProductServiceTest {
@@ -19,6 +39,21 @@ class OldProductServiceTest {
     @Autowired
     OldProductRepository oldProductRepository;
 
+    @Autowired
+    OldProductController oldProductController;
+
+    @Autowired
+    FormattedDescriptionCache formattedDescriptionCache;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    HotProductCounters hotProductCounters;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
     @Test
     void canListAllProductsDecsriptions() {
         //given
@@ -34,6 +69,132 @@ class OldProductServiceTest {
 
     }
 
+    @Test
+    void descriptionsArePagedBySerialNumber() {
+        //given
+        oldProductRepository.save(productWithDesc("desc3", "longDesc3"));
+        oldProductRepository.save(productWithDesc("desc4", "longDesc4"));
+        oldProductRepository.save(productWithDesc("desc5", "longDesc5"));
+
+        //when
+        List<String> paged = new ArrayList<>();
+        DescriptionPage page = oldProductService.findDescriptions(null, 2);
+        paged.addAll(page.getDescriptions());
+        while (page.getNext() != null) {
+            Assertions.assertThat(page.getDescriptions()).hasSize(2);
+            page = oldProductService.findDescriptions(page.getNext(), 2);
+            paged.addAll(page.getDescriptions());
+        }
+
+        //then
+        Assertions.assertThat(paged).containsExactlyElementsOf(oldProductService.findAllDescriptions());
+        Assertions.assertThat(paged).contains("desc3 *** longDesc3", "desc4 *** longDesc4", "desc5 *** longDesc5");
+    }
+
+    @Test
+    void controllerStreamsDescriptionsAsJsonArray() throws Exception {
+        //given
+        oldProductRepository.save(productWithDesc("desc6", "longDesc6"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        //when
+        oldProductController.streamDescriptions().getBody().writeTo(out);
+
+        //then
+        List<String> streamed = Arrays.asList(objectMapper.readValue(out.toByteArray(), String[].class));
+        Assertions.assertThat(streamed).containsExactlyElementsOf(oldProductService.findAllDescriptions());
+        Assertions.assertThat(streamed).contains("desc6 *** longDesc6");
+    }
+
+    @Test
+    void replacesCharAcrossCatalogOnlyWhereItOccurs() {
+        //given
+        OldProduct inDesc = oldProductRepository.save(productWithDesc("a§b", "long"));
+        OldProduct inLongDesc = oldProductRepository.save(productWithDesc("ab", "lo§ng§"));
+        OldProduct without = oldProductRepository.save(productWithDesc("ab", "long"));
+
+        //when
+        int touched = oldProductService.replaceCharInDescs('§', '-');
+
+        //then
+        Assertions.assertThat(touched).isEqualTo(2);
+        Assertions.assertThat(formattedDescOf(inDesc)).isEqualTo("a-b *** long");
+        Assertions.assertThat(formattedDescOf(inLongDesc)).isEqualTo("ab *** lo-ng-");
+        Assertions.assertThat(formattedDescOf(without)).isEqualTo("ab *** long");
+        Assertions.assertThat(oldProductService.replaceCharInDescs('§', '-')).isZero();
+    }
+
+    @Test
+    void replacesCharOnlyInSelectedProducts() {
+        //given
+        OldProduct selected = oldProductRepository.save(productWithDesc("x¶", "¶y"));
+        OldProduct other = oldProductRepository.save(productWithDesc("x¶", "¶y"));
+
+        //when
+        int touched = oldProductService.replaceCharInDescs(List.of(selected.serialNumber()), '¶', '+');
+
+        //then
+        Assertions.assertThat(touched).isEqualTo(1);
+        Assertions.assertThat(formattedDescOf(selected)).isEqualTo("x+ *** +y");
+        Assertions.assertThat(formattedDescOf(other)).isEqualTo("x¶ *** ¶y");
+    }
+
+    @Test
+    void formattedDescriptionsAreCachedUntilDescriptionChanges() {
+        //given
+        OldProduct product = oldProductRepository.save(productWithDesc("cached", "desc"));
+        oldProductService.findAllDescriptions();
+        long hits = formattedDescriptionCache.hitCount();
+        long misses = formattedDescriptionCache.missCount();
+
+        //when
+        oldProductService.findAllDescriptions();
+
+        //then
+        Assertions.assertThat(formattedDescriptionCache.missCount()).isEqualTo(misses);
+        Assertions.assertThat(formattedDescriptionCache.hitCount()).isGreaterThan(hits);
+        Assertions.assertThat(formattedDescriptionCache.hitRate()).isPositive();
+
+        //when
+        oldProductService.replaceCharInDesc(product.serialNumber(), 'h', 'x');
+
+        //then
+        Assertions.assertThat(oldProductService.findAllDescriptions()).contains("cacxed *** desc").doesNotContain("cached *** desc");
+        Assertions.assertThat(formattedDescriptionCache.missCount()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void bulkReplaceReformatsOnlyChangedDescriptions() {
+        //given
+        OldProduct changed = oldProductRepository.save(productWithDesc("bulk", "one"));
+        OldProduct unchanged = oldProductRepository.save(productWithDesc("other", "two"));
+        FormattedDescriptionCache cache = new FormattedDescriptionCache(100);
+        formattedDescriptionsOf(List.of(changed, unchanged), cache);
+
+        //when
+        oldProductService.replaceCharInDescs(List.of(changed.serialNumber(), unchanged.serialNumber()), 'b', 'p');
+
+        //then
+        Assertions.assertThat(formattedDescriptionsOf(List.of(changed, unchanged), cache)).containsExactly("pulk *** one", "other *** two");
+        Assertions.assertThat(cache.missCount()).isEqualTo(3);
+        Assertions.assertThat(cache.hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void staleProductWriteConflictsWithConditionalUpdate() {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 10));
+        OldProduct stale = oldProductRepository.findById(oldProduct.serialNumber()).get();
+
+        //when
+        oldProductService.incrementCounter(oldProduct.serialNumber());
+        stale.incrementCounter();
+
+        //then
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> oldProductRepository.save(stale));
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isEqualTo(11);
+    }
+
     @Test
     void canDecrementCounter() {
         //given
@@ -70,6 +231,206 @@ class OldProductServiceTest {
         Assertions.assertThat(oldProductService.getPriceOf(oldProduct.serialNumber())).isZero();
     }
 
+    @Test
+    void hotProductCountsConcurrentlyAndReconcilesIntoCounter() throws Exception {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 2000));
+        oldProductService.markHot(oldProduct.serialNumber());
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Callable<Boolean>> tasks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            tasks.add(() -> oldProductService.decrementCounter(oldProduct.serialNumber()));
+            tasks.add(() -> oldProductService.incrementCounter(oldProduct.serialNumber()));
+            tasks.add(() -> oldProductService.decrementCounter(oldProduct.serialNumber()));
+        }
+
+        //when
+        for (Future<Boolean> result : executor.invokeAll(tasks)) {
+            Assertions.assertThat(result.get()).isTrue();
+        }
+        executor.shutdown();
+        oldProductService.reconcileHotCounters();
+
+        //then
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isEqualTo(1000);
+        Assertions.assertThat(oldProductRepository.findById(oldProduct.serialNumber()).get().getCounter()).isEqualTo(1000);        oldProductService.markCold(oldProduct.serialNumber());
+    }
+
+    @Test
+    void hotProductCounterCannotGoNegative() {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 1));
+        oldProductService.markHot(oldProduct.serialNumber());
+        oldProductService.decrementCounter(oldProduct.serialNumber());
+
+        //expect
+        assertFalse(oldProductService.decrementCounter(oldProduct.serialNumber()));
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isZero();        oldProductService.markCold(oldProduct.serialNumber());
+    }
+
+    @Test
+    void hotProductWithZeroPriceCannotBeCounted() {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 5));
+        oldProductService.markHot(oldProduct.serialNumber());
+
+        //when
+        oldProductService.changePriceOf(oldProduct.serialNumber(), ZERO);
+
+        //then
+        assertFalse(oldProductService.incrementCounter(oldProduct.serialNumber()));
+        oldProductService.markCold(oldProduct.serialNumber());
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isEqualTo(5);
+    }
+
+    @Test
+    void markingHotWaitsForRowWriteInFlight() throws Exception {
+        //given an increment of the row not committed yet
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 5));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch incremented = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        Future<?> rowWrite = executor.submit(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            oldProductService.incrementCounter(oldProduct.serialNumber());
+            incremented.countDown();
+            await(commit);
+        }));
+        await(incremented);
+
+        //when
+        Future<?> markHot = executor.submit(() -> oldProductService.markHot(oldProduct.serialNumber()));
+
+        //then
+        assertThrows(TimeoutException.class, () -> markHot.get(200, TimeUnit.MILLISECONDS));
+        commit.countDown();
+        rowWrite.get(5, TimeUnit.SECONDS);
+        markHot.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+        assertTrue(hotProductCounters.of(oldProduct.serialNumber()).isPresent());
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isEqualTo(6);
+        oldProductService.markCold(oldProduct.serialNumber());
+    }
+
+    @Test
+    void rolledBackMarkColdKeepsCountingOnTheSameCounter() {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 5));
+        oldProductService.markHot(oldProduct.serialNumber());
+        oldProductService.incrementCounter(oldProduct.serialNumber());
+
+        //when
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            oldProductService.markCold(oldProduct.serialNumber());
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertTrue(hotProductCounters.of(oldProduct.serialNumber()).isPresent());
+        Assertions.assertThat(oldProductService.getCounterOf(oldProduct.serialNumber())).isEqualTo(6);
+        oldProductService.markCold(oldProduct.serialNumber());
+    }
+
+    @Test
+    void rolledBackPriceChangeDoesNotStopHotCounting() {
+        //given
+        OldProduct oldProduct = oldProductRepository.save(productWithPriceAndCounter(BigDecimal.TEN, 5));
+        oldProductService.markHot(oldProduct.serialNumber());
+
+        //when
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            oldProductService.changePriceOf(oldProduct.serialNumber(), ZERO);
+            status.setRollbackOnly();
+        });
+
+        //then
+        assertTrue(oldProductService.incrementCounter(oldProduct.serialNumber()));
+        Assertions.assertThat(oldProductService.getPriceOf(oldProduct.serialNumber())).isEqualByComparingTo(BigDecimal.TEN);
+        oldProductService.markCold(oldProduct.serialNumber());
+    }
+
+    @ParameterizedTest
+    @CsvSource({"10, 5", "10, 1", "10, 0", "0, 5", "0, 0"})
+    void conditionalUpdatesFollowDomainRules(BigDecimal price, int counter) {
+        for (Mutation mutation : Mutation.values()) {
+            //given
+            OldProduct inMemory = productWithPriceAndCounter(price, counter);
+            OldProduct stored = oldProductRepository.save(productWithPriceAndCounter(price, counter));
+
+            //when
+            boolean domainApplied = mutation.applyTo(inMemory);
+            boolean applied = mutation.applyTo(oldProductService, stored.serialNumber());
+
+            //then
+            Assertions.assertThat(applied).as(mutation.name()).isEqualTo(domainApplied);
+            Assertions.assertThat(oldProductService.getCounterOf(stored.serialNumber())).as(mutation.name()).isEqualTo(inMemory.getCounter());
+            Assertions.assertThat(oldProductService.getPriceOf(stored.serialNumber())).as(mutation.name()).isEqualByComparingTo(inMemory.getPrice());
+        }
+    }
+
+    enum Mutation {
+        INCREMENT {
+            boolean applyTo(OldProduct product) {
+                return domainRuleAllows(product::incrementCounter);
+            }
+
+            boolean applyTo(OldProductService service, UUID serialNumber) {
+                return service.incrementCounter(serialNumber);
+            }
+        },
+        DECREMENT {
+            boolean applyTo(OldProduct product) {
+                return domainRuleAllows(product::decrementCounter);
+            }
+
+            boolean applyTo(OldProductService service, UUID serialNumber) {
+                return service.decrementCounter(serialNumber);
+            }
+        },
+        CHANGE_PRICE {
+            boolean applyTo(OldProduct product) {
+                return product.changePriceTo(BigDecimal.ONE);
+            }
+
+            boolean applyTo(OldProductService service, UUID serialNumber) {
+                return service.changePriceOf(serialNumber, BigDecimal.ONE);
+            }
+        };
+
+        abstract boolean applyTo(OldProduct product);
+
+        abstract boolean applyTo(OldProductService service, UUID serialNumber);
+
+        static boolean domainRuleAllows(Runnable mutation) {
+            try {
+                mutation.run();
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+
+    static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    List<String> formattedDescriptionsOf(List<OldProduct> products, FormattedDescriptionCache cache) {
+        List<String> descriptions = new ArrayList<>();
+        for (OldProduct product : products) {
+            OldProduct stored = oldProductRepository.findById(product.serialNumber()).get();
+            descriptions.add(cache.formatted(stored.serialNumber(), stored.getDesc(), stored.getLongDesc()));
+        }
+        return descriptions;
+    }
+
+    String formattedDescOf(OldProduct product) {
+        return oldProductRepository.findById(product.serialNumber()).get().formatDesc();
+    }
+
     OldProduct productWithPriceAndCounter(BigDecimal price, int counter) {
         return new OldProduct(price, "desc", "longDesc", counter);
     }
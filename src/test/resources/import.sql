@@ -0,0 +1,3 @@
+-- testdb.sql inserts orders and groups with fixed ids, keep generated ones clear of them
+ALTER SEQUENCE ORDER_SEQ RESTART WITH 1000;
+ALTER SEQUENCE CUSTOMER_ORDER_GROUP_SEQ RESTART WITH 1000;
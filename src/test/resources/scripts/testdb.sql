@@ -1,3 +1,6 @@
+DELETE FROM ORDER_TAX;
+DELETE FROM ORDER_LINE;
+DELETE FROM ORDER_TABLE_TAX_RULES;
 DELETE FROM ORDER_TABLE;
 DELETE FROM CUSTOMER_ORDER_GROUP;
 DELETE FROM CUSTOMER;
@@ -13,36 +16,36 @@ INSERT INTO CUSTOMER (ID, NAME, TYPE) VALUES (8, 'LUDWIK', 'Representative');
 INSERT INTO CUSTOMER (ID, NAME, TYPE) VALUES (9, 'PAWEŁ LOGISTYK', 'Person');
 INSERT INTO CUSTOMER (ID, NAME, TYPE) VALUES (10, 'EDWARD SPRZEDAWCA', 'Person');
 
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (3, 'PIOTR ADMIN', 3, NULL);
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (3, 'PIOTR ADMIN', 3, NULL, '/3/');
 
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (1, 'ZDROWO JEDZ MAIN', 1, 3);
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (2, 'CATERINX MAIN', 2, 3);
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (1, 'ZDROWO JEDZ MAIN', 1, 3, '/3/1/');
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (2, 'CATERINX MAIN', 2, 3, '/3/2/');
 
 
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (4, 'ZDROWO JEDZ K$L', 4, 1);
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (5, 'ZDROWO JEDZ LOGISTYKA', 5, 1);
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (6, 'CATERINX ZAMÓWIENIA', 6, 2);
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (4, 'ZDROWO JEDZ K$L', 4, 1, '/3/1/4/');
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (5, 'ZDROWO JEDZ LOGISTYKA', 5, 1, '/3/1/5/');
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (6, 'CATERINX ZAMÓWIENIA', 6, 2, '/3/2/6/');
 
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (7, 'KATARZYNA K$L ZDROWO JEDZ', 7, 4);
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (8, 'LUDWIK K$L ZDROWO JEDZ', 8, 4);
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (9, 'PAWEŁ LOGISTYKA CATERINX', 9, 5);
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (7, 'KATARZYNA K$L ZDROWO JEDZ', 7, 4, '/3/1/4/7/');
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (8, 'LUDWIK K$L ZDROWO JEDZ', 8, 4, '/3/1/4/8/');
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (9, 'PAWEŁ LOGISTYKA CATERINX', 9, 5, '/3/1/5/9/');
 
-INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID) VALUES (10, 'EDWARD SPRZEDAWCA', 10, 6);
+INSERT INTO CUSTOMER_ORDER_GROUP (ID, DESCRIPTION, CUSTOMER_ID, PARENT_ID, PATH) VALUES (10, 'EDWARD SPRZEDAWCA', 10, 6, '/3/2/6/10/');
 
 -- main Caterinx
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (5, 'Paid', 'Phone', 2, null);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (5, 'Paid', 'Phone', 2, null, 0);
 
 -- logistyka Zdrowo Jedz
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (1, 'Initial', 'Phone', 5, null);
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (2, 'Paid', 'Phone', 5, null);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (1, 'Initial', 'Phone', 5, null, 0);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (2, 'Paid', 'Phone', 5, null, 0);
 
 -- zamówienia Caterinx
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (3, 'Paid', 'Phone', 6, null);
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (4, 'Paid', 'Wire', 6, null);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (3, 'Paid', 'Phone', 6, null, 0);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (4, 'Paid', 'Wire', 6, null, 0);
 
 -- kasia k$l
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (6, 'Paid', 'Phone', 7, null);
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (7, 'Paid', 'Phone', 7, null);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (6, 'Paid', 'Phone', 7, null, 0);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (7, 'Paid', 'Phone', 7, null, 0);
 
 -- edward sprzedawca Caterinx
-INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP) VALUES (8, 'Paid', 'Phone', 10, null);
+INSERT INTO ORDER_TABLE (ID, ORDER_STATE, ORDER_TYPE, CUSTOMER_ORDER_GROUP_ID, CONFIRMATION_TIMESTAMP, VERSION) VALUES (8, 'Paid', 'Phone', 10, null, 0);